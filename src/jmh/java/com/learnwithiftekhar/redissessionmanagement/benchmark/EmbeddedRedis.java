@@ -0,0 +1,96 @@
+package com.learnwithiftekhar.redissessionmanagement.benchmark;
+
+import com.learnwithiftekhar.redissessionmanagement.repository.AccessTokenCache;
+import com.learnwithiftekhar.redissessionmanagement.repository.BlacklistFilter;
+import com.learnwithiftekhar.redissessionmanagement.repository.RedisKeyLayout;
+import com.learnwithiftekhar.redissessionmanagement.repository.SessionLookupBatcher;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * In-process Redis server and the token beans wired against it, configured like application.yml
+ */
+public class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer redisServer;
+    private final LettuceConnectionFactory connectionFactory;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisTemplate<String, byte[]> tokenRedisTemplate;
+    private final BlacklistFilter blacklistFilter;
+    private final TokenRepository tokenRepository;
+
+    public EmbeddedRedis() throws IOException {
+        int port = freePort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        tokenRedisTemplate = new RedisTemplate<>();
+        tokenRedisTemplate.setConnectionFactory(connectionFactory);
+        tokenRedisTemplate.setKeySerializer(new StringRedisSerializer());
+        tokenRedisTemplate.setValueSerializer(RedisSerializer.byteArray());
+        tokenRedisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        tokenRedisTemplate.setHashValueSerializer(RedisSerializer.byteArray());
+        tokenRedisTemplate.afterPropertiesSet();
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+
+        blacklistFilter = new BlacklistFilter(redisTemplate, listenerContainer, new SimpleMeterRegistry(), 1_000_000, 0.01);
+        blacklistFilter.rebuild();
+
+        tokenRepository = new TokenRepository(tokenRedisTemplate, tokenRedisTemplate, new RedisKeyLayout(false), blacklistFilter, new SimpleMeterRegistry(), "binary", true);
+        ReflectionTestUtils.setField(tokenRepository, "maxSessionsPerUser", 5);
+        ReflectionTestUtils.setField(tokenRepository, "evictionPolicy", "evict-oldest");
+    }
+
+    public TokenRepository tokenRepository() {
+        return tokenRepository;
+    }
+
+    public AccessTokenCache accessTokenCache(boolean nearCacheEnabled) {
+        return new AccessTokenCache(tokenRepository, lookupBatcher(false), redisTemplate, listenerContainer,
+                nearCacheEnabled, 100_000, 5_000);
+    }
+
+    public SessionLookupBatcher lookupBatcher(boolean enabled) {
+        return new SessionLookupBatcher(tokenRepository, new SimpleMeterRegistry(), enabled, 128, 200, 250);
+    }
+
+    @Override
+    public void close() throws IOException {
+        listenerContainer.stop();
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
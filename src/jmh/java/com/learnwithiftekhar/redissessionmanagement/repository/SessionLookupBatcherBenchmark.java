@@ -0,0 +1,54 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import com.learnwithiftekhar.redissessionmanagement.benchmark.EmbeddedRedis;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session lookups from many threads at once, each its own pipeline or coalesced by
+ * {@link SessionLookupBatcher}; throughput shows what batching saves in Redis round trips
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class SessionLookupBatcherBenchmark {
+
+    private static final int USERS = 1_000;
+
+    @Param({"false", "true"})
+    boolean batching;
+
+    private EmbeddedRedis redis;
+    private SessionLookupBatcher lookupBatcher;
+
+    @Setup
+    public void setUp() throws Exception {
+        redis = new EmbeddedRedis();
+        lookupBatcher = redis.lookupBatcher(batching);
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < USERS; i++) {
+            redis.tokenRepository().createSession("user-" + i, UUID.randomUUID().toString(), new SessionRecord(
+                    UUID.randomUUID().toString(), UUID.randomUUID().toString(), "benchmark",
+                    now, now, now + TimeUnit.DAYS.toMillis(7)), 0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        lookupBatcher.shutdown();
+        redis.close();
+    }
+
+    @Benchmark
+    public UserSessions getSessions() {
+        return lookupBatcher.getSessions("user-" + ThreadLocalRandom.current().nextInt(USERS));
+    }
+}
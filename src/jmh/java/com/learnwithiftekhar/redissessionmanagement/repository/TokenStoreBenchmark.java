@@ -0,0 +1,95 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import com.learnwithiftekhar.redissessionmanagement.benchmark.EmbeddedRedis;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TokenStore} operations against an in-process Redis server, with the in-memory store
+ * as the baseline that shows the cost of the Redis round trips
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenStoreBenchmark {
+
+    private static final String USERNAME = "benchmark-user";
+
+    @Param({"redis", "memory"})
+    String store;
+
+    private EmbeddedRedis redis;
+    private TokenStore tokenStore;
+    private String sessionId;
+    private SessionRecord session;
+    private String refreshTokenId;
+    private String blacklistedToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        if ("redis".equals(store)) {
+            redis = new EmbeddedRedis();
+            tokenStore = redis.tokenRepository();
+        } else {
+            tokenStore = new InMemoryTokenStore(100, 5, "evict-oldest");
+        }
+
+        long now = System.currentTimeMillis();
+        sessionId = UUID.randomUUID().toString();
+        session = new SessionRecord(UUID.randomUUID().toString(), UUID.randomUUID().toString(),
+                "benchmark", now, now, now + TimeUnit.DAYS.toMillis(7));
+        tokenStore.createSession(USERNAME, sessionId, session, 0);
+        refreshTokenId = session.refreshTokenId();
+
+        blacklistedToken = UUID.randomUUID().toString();
+        tokenStore.blacklistAccessToken(blacklistedToken, Instant.now().plusSeconds(3600));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    @Benchmark
+    public long createSession() {
+        // Stays at the session limit, so every call also evicts the oldest session
+        return tokenStore.createSession(USERNAME, UUID.randomUUID().toString(), session, 0);
+    }
+
+    @Benchmark
+    public RefreshRotation rotateRefreshToken() {
+        String newRefreshTokenId = UUID.randomUUID().toString();
+        RefreshRotation rotation = tokenStore.rotateRefreshToken(USERNAME, sessionId, 0, refreshTokenId,
+                UUID.randomUUID().toString(), newRefreshTokenId);
+        refreshTokenId = newRefreshTokenId;
+        return rotation;
+    }
+
+    @Benchmark
+    public UserSessions getSessions() {
+        return tokenStore.getSessions(USERNAME);
+    }
+
+    @Benchmark
+    public long getEpoch() {
+        return tokenStore.getEpoch(USERNAME);
+    }
+
+    @Benchmark
+    public boolean isAccessTokenBlacklistedMiss() {
+        return tokenStore.isAccessTokenBlacklisted(sessionId);
+    }
+
+    @Benchmark
+    public boolean isAccessTokenBlacklistedHit() {
+        return tokenStore.isAccessTokenBlacklisted(blacklistedToken);
+    }
+}
@@ -0,0 +1,80 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import com.learnwithiftekhar.redissessionmanagement.benchmark.EmbeddedRedis;
+import com.learnwithiftekhar.redissessionmanagement.dto.TokenPair;
+import com.learnwithiftekhar.redissessionmanagement.repository.SessionRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-request cost of {@link JwtAuthenticationFilter} for a valid access token: signature check,
+ * session lookup (near cache or Redis) and building the principal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    @Param({"true", "false"})
+    boolean nearCache;
+
+    @Param({"false", "true"})
+    boolean authoritiesInToken;
+
+    private EmbeddedRedis redis;
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() throws Exception {
+        redis = new EmbeddedRedis();
+        JwtTokenProvider tokenProvider = JwtTokenProviderFixture.tokenProvider(authoritiesInToken);
+        filter = new JwtAuthenticationFilter(tokenProvider,
+                username -> JwtTokenProviderFixture.USER,
+                redis.accessTokenCache(nearCache),
+                new SimpleMeterRegistry());
+
+        String sessionId = UUID.randomUUID().toString();
+        TokenPair tokenPair = tokenProvider.generateTokenPair(JwtTokenProviderFixture.authentication(), 0, sessionId);
+        long now = System.currentTimeMillis();
+        redis.tokenRepository().createSession(JwtTokenProviderFixture.USER.getUsername(), sessionId, new SessionRecord(
+                tokenPair.getAccessTokenId(),
+                tokenPair.getRefreshTokenId(),
+                "benchmark",
+                now,
+                now,
+                now + tokenPair.getRefreshTokenExpirationMs()), 0);
+        authorizationHeader = "Bearer " + tokenPair.getAccessToken();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public Authentication doFilterInternal() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sessions");
+        request.addHeader(HttpHeaders.AUTHORIZATION, authorizationHeader);
+
+        filter.doFilterInternal(request, new MockHttpServletResponse(), NO_OP_CHAIN);
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+}
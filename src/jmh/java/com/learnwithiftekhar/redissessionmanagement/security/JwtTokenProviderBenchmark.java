@@ -0,0 +1,58 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import com.learnwithiftekhar.redissessionmanagement.dto.TokenPair;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.Authentication;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    @Param({"false", "true"})
+    boolean authoritiesInToken;
+
+    // false measures the generic jjwt path; run with -prof gc to compare allocation per operation
+    @Param({"false", "true"})
+    boolean fastCodec;
+
+    private JwtTokenProvider tokenProvider;
+    private Authentication authentication;
+    private String sessionId;
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = JwtTokenProviderFixture.tokenProvider(authoritiesInToken, fastCodec);
+        authentication = JwtTokenProviderFixture.authentication();
+        sessionId = UUID.randomUUID().toString();
+        accessToken = tokenProvider.generateTokenPair(authentication, 0, sessionId).getAccessToken();
+    }
+
+    @Benchmark
+    public TokenPair generateTokenPair() {
+        return tokenProvider.generateTokenPair(authentication, 0, sessionId);
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return tokenProvider.validateToken(accessToken);
+    }
+
+    @Benchmark
+    public String getUsernameFromToken() {
+        return tokenProvider.getUsernameFromToken(accessToken);
+    }
+
+    @Benchmark
+    public Optional<TokenClaims> verifyToken() {
+        return tokenProvider.verifyToken(accessToken);
+    }
+}
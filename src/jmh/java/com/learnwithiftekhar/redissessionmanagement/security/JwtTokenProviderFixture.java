@@ -0,0 +1,46 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * A {@link JwtTokenProvider} configured like application.yml, and a user to issue tokens for
+ */
+final class JwtTokenProviderFixture {
+
+    static final String SECRET = "80TMFC04qj9DeTh5S9KNEe3v0mAsO+o101pxwSD5oYQ0Dc5RXSJuna1XctOohWFPrDjQJst1wcCAa1pEhomNQ3S3qbSDg17BUvngtM10DfSdO9Fui64+fZwk9Zqmf18vJyZvnEVKsYJ30NIDTNoIFJcZVHHETxZr8AnxUJFmvPHlz9caewpjb+TcjgcOZLU8/SLgP+DP74uMm363DozooJXG7PIiAKAx1ixow2xpdBmT12qgatqxJkswo6AO4GGTK9xDQkCksrCGedHxI/NcjL+MT/EspjqUcIDopVdN/piWNgm71AAJ80DCzrQYYAQrah3jE8YbzPQ4R7ku+LWBTQ==";
+
+    static final UserDetails USER = User.withUsername("benchmark-user")
+            .password("")
+            .authorities(AuthorityUtils.createAuthorityList("USER"))
+            .build();
+
+    private JwtTokenProviderFixture() {
+    }
+
+    static JwtTokenProvider tokenProvider(boolean authoritiesInToken) {
+        return tokenProvider(authoritiesInToken, true);
+    }
+
+    static JwtTokenProvider tokenProvider(boolean authoritiesInToken, boolean fastCodec) {
+        // HMAC signing never touches the key ring's Redis hash
+        JwtKeyRing keyRing = new JwtKeyRing(null, "HMAC", 86_400_000L, 604_800_000L, 300L, 1_000L);
+        JwtTokenProvider tokenProvider = new JwtTokenProvider(keyRing);
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(tokenProvider, "jwtIssuer", "learnwithiftekhar.com");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpirationMS", 3_600_000L);
+        ReflectionTestUtils.setField(tokenProvider, "refreshTokenExpirationMS", 604_800_000L);
+        ReflectionTestUtils.setField(tokenProvider, "authoritiesInToken", authoritiesInToken);
+        ReflectionTestUtils.setField(tokenProvider, "fastCodec", fastCodec);
+        tokenProvider.init();
+        return tokenProvider;
+    }
+
+    static Authentication authentication() {
+        return new UsernamePasswordAuthenticationToken(USER, null, USER.getAuthorities());
+    }
+}
@@ -0,0 +1,33 @@
+package com.learnwithiftekhar.redissessionmanagement.config;
+
+import com.learnwithiftekhar.redissessionmanagement.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+@Configuration
+public class PasswordConfig {
+
+    /**
+     * BCrypt confined to a CPU-sized executor, so request threads (virtual or not) never run more
+     * concurrent hashes than there are cores
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${password-hashing.threads}") int threads,
+                                           @Value("${password-hashing.queue-capacity}") int queueCapacity,
+                                           @Value("${password-hashing.retry-after}") long retryAfterMs) {
+        return new BoundedPasswordEncoder(
+                new BCryptPasswordEncoder(),
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                queueCapacity,
+                Duration.ofMillis(retryAfterMs),
+                meterRegistry
+        );
+    }
+}
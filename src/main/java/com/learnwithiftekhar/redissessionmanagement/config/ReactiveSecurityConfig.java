@@ -0,0 +1,80 @@
+package com.learnwithiftekhar.redissessionmanagement.config;
+
+import com.learnwithiftekhar.redissessionmanagement.repository.ReactiveAccessTokenCache;
+import com.learnwithiftekhar.redissessionmanagement.security.JwtAuthenticationWebFilter;
+import com.learnwithiftekhar.redissessionmanagement.security.JwtTokenProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Security configuration of the reactive profile. Requests are authenticated statelessly by
+ * {@link JwtAuthenticationWebFilter}; blocking JPA lookups and password hashing run on the
+ * bounded elastic scheduler so the event loop only waits on Redis.
+ */
+@Configuration
+@Profile("reactive")
+@EnableWebFluxSecurity
+@RequiredArgsConstructor
+public class ReactiveSecurityConfig {
+    private final UserDetailsService userDetailsService;
+
+    /**
+     * Serve on Netty's event loop even though Tomcat is on the classpath for the servlet profile
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public ReactiveUserDetailsService reactiveUserDetailsService() {
+        return username -> Mono.fromCallable(() -> userDetailsService.loadUserByUsername(username))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Bean
+    public ReactiveAuthenticationManager reactiveAuthenticationManager(ReactiveUserDetailsService reactiveUserDetailsService,
+                                                                       PasswordEncoder passwordEncoder) {
+        // Password checks are published on the bounded elastic scheduler by default
+        UserDetailsRepositoryReactiveAuthenticationManager authenticationManager =
+                new UserDetailsRepositoryReactiveAuthenticationManager(reactiveUserDetailsService);
+        authenticationManager.setPasswordEncoder(passwordEncoder);
+        return authenticationManager;
+    }
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http,
+                                                         JwtTokenProvider tokenProvider,
+                                                         ReactiveAccessTokenCache accessTokenCache) {
+        return http
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.UNAUTHORIZED)))
+                .authorizeExchange(exchanges -> exchanges
+                        .pathMatchers("/api/auth/**", "/.well-known/jwks.json").permitAll()
+                        .anyExchange().authenticated())
+                .addFilterAt(new JwtAuthenticationWebFilter(tokenProvider, userDetailsService, accessTokenCache),
+                        SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+}
@@ -1,19 +1,123 @@
 package com.learnwithiftekhar.redissessionmanagement.config;
 
+import com.learnwithiftekhar.redissessionmanagement.repository.RedisKeyLayout;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.Set;
+
+/**
+ * Redis connections for the topology configured under {@code spring.data.redis}: a single node,
+ * Sentinel ({@code sentinel.master} and {@code sentinel.nodes}) or Cluster ({@code cluster.nodes}).
+ */
 @Configuration
 public class RedisConfig {
 
+    private final RedisProperties properties;
+    private final ReadFrom replicaReadFrom;
+
+    public RedisConfig(RedisProperties properties,
+                       @Value("${token.redis.read-from}") String replicaReadFrom) {
+        this.properties = properties;
+        this.replicaReadFrom = ReadFrom.valueOf(replicaReadFrom);
+    }
+
+    /**
+     * Connections for writes and reads that must see them: every command goes to a primary
+     */
+    @Bean
+    @Primary
+    public LettuceConnectionFactory redisConnectionFactory() {
+        return connectionFactory(ReadFrom.UPSTREAM);
+    }
+
+    /**
+     * Connections for hot-path reads that tolerate replication lag, routed by {@code token.redis.read-from}.
+     * A single node has no replicas, so there this is just a second connection to it.
+     */
+    @Bean
+    public LettuceConnectionFactory replicaConnectionFactory() {
+        return connectionFactory(replicaReadFrom);
+    }
+
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
-        return new LettuceConnectionFactory();
+    public RedisKeyLayout redisKeyLayout() {
+        return new RedisKeyLayout(properties.getCluster() != null);
+    }
+
+    private LettuceConnectionFactory connectionFactory(ReadFrom readFrom) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder client = LettuceClientConfiguration.builder();
+        if (properties.getTimeout() != null) {
+            client.commandTimeout(properties.getTimeout());
+        }
+        if (properties.getClientName() != null) {
+            client.clientName(properties.getClientName());
+        }
+        if (properties.getSsl().isEnabled()) {
+            client.useSsl();
+        }
+
+        RedisConfiguration configuration;
+        if (properties.getCluster() != null) {
+            RedisClusterConfiguration cluster = new RedisClusterConfiguration(properties.getCluster().getNodes());
+            if (properties.getCluster().getMaxRedirects() != null) {
+                cluster.setMaxRedirects(properties.getCluster().getMaxRedirects());
+            }
+            cluster.setUsername(properties.getUsername());
+            cluster.setPassword(RedisPassword.of(properties.getPassword()));
+            configuration = cluster;
+
+            // Follow failovers and resharding instead of waiting for MOVED errors
+            RedisProperties.Lettuce.Cluster.Refresh refresh = properties.getLettuce().getCluster().getRefresh();
+            ClusterTopologyRefreshOptions.Builder topologyRefresh = ClusterTopologyRefreshOptions.builder()
+                    .dynamicRefreshSources(refresh.isDynamicRefreshSources());
+            if (refresh.isAdaptive()) {
+                topologyRefresh.enableAllAdaptiveRefreshTriggers();
+            }
+            if (refresh.getPeriod() != null) {
+                topologyRefresh.enablePeriodicRefresh(refresh.getPeriod());
+            }
+            client.clientOptions(ClusterClientOptions.builder().topologyRefreshOptions(topologyRefresh.build()).build());
+            client.readFrom(readFrom);
+        } else if (properties.getSentinel() != null) {
+            RedisSentinelConfiguration sentinel = new RedisSentinelConfiguration(
+                    properties.getSentinel().getMaster(), Set.copyOf(properties.getSentinel().getNodes()));
+            sentinel.setDatabase(properties.getDatabase());
+            sentinel.setUsername(properties.getUsername());
+            sentinel.setPassword(RedisPassword.of(properties.getPassword()));
+            sentinel.setSentinelUsername(properties.getSentinel().getUsername());
+            sentinel.setSentinelPassword(RedisPassword.of(properties.getSentinel().getPassword()));
+            configuration = sentinel;
+            client.readFrom(readFrom);
+        } else {
+            RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+            standalone.setDatabase(properties.getDatabase());
+            standalone.setUsername(properties.getUsername());
+            standalone.setPassword(RedisPassword.of(properties.getPassword()));
+            configuration = standalone;
+        }
+        return new LettuceConnectionFactory(configuration, client.build());
     }
 
     @Bean
@@ -27,4 +131,54 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * Template for the token keyspace: values are raw bytes, so tokens, epochs and
+     * session records are stored without JSON wrapping and passed through without copying.
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> tokenRedisTemplate() {
+        return tokenTemplate(redisConnectionFactory());
+    }
+
+    /**
+     * {@link #tokenRedisTemplate()} on the replica connections, for session lookups and blacklist checks
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> replicaTokenRedisTemplate() {
+        return tokenTemplate(replicaConnectionFactory());
+    }
+
+    private static RedisTemplate<String, byte[]> tokenTemplate(LettuceConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #tokenRedisTemplate()} for the reactive stack
+     */
+    @Bean
+    @Profile("reactive")
+    public ReactiveRedisTemplate<String, byte[]> reactiveTokenRedisTemplate() {
+        RedisSerializationContext<String, byte[]> serializationContext = RedisSerializationContext
+                .<String, byte[]>newSerializationContext(new StringRedisSerializer())
+                .value(RedisSerializer.byteArray())
+                .hashKey(new StringRedisSerializer())
+                .hashValue(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(redisConnectionFactory(), serializationContext);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory());
+        return container;
+    }
 }
@@ -0,0 +1,91 @@
+package com.learnwithiftekhar.redissessionmanagement.controller;
+
+import com.learnwithiftekhar.redissessionmanagement.dto.RevocationJobResponse;
+import com.learnwithiftekhar.redissessionmanagement.dto.RevocationRequest;
+import com.learnwithiftekhar.redissessionmanagement.service.ActiveSessionService;
+import com.learnwithiftekhar.redissessionmanagement.service.SessionRevocationService;
+import com.learnwithiftekhar.redissessionmanagement.service.UserImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private final SessionRevocationService revocationService;
+    private final ActiveSessionService activeSessionService;
+    private final UserImportService userImportService;
+
+    public AdminController(SessionRevocationService revocationService, ActiveSessionService activeSessionService,
+                           UserImportService userImportService) {
+        this.revocationService = revocationService;
+        this.activeSessionService = activeSessionService;
+        this.userImportService = userImportService;
+    }
+
+    @GetMapping("/sessions/stats")
+    public ResponseEntity<?> getSessionStats() {
+        return ResponseEntity.ok(activeSessionService.getStats());
+    }
+
+    @GetMapping("/sessions")
+    public ResponseEntity<?> listSessions(@RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(activeSessionService.listSessions(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/users/{username}/sessions")
+    public ResponseEntity<?> getUserSessions(@PathVariable String username) {
+        return ResponseEntity.ok(activeSessionService.getUserSessions(username));
+    }
+
+    @GetMapping("/users/{username}/sessions/count")
+    public ResponseEntity<?> countUserSessions(@PathVariable String username) {
+        return ResponseEntity.ok(Map.of("activeSessions", activeSessionService.countUserSessions(username)));
+    }
+
+    // The body is read as it arrives, so imports of any size run in constant memory
+    @PostMapping(value = "/users/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<?> importUsers(HttpServletRequest request) throws IOException {
+        try {
+            return ResponseEntity.ok(userImportService.importUsers(request.getInputStream()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/revocations")
+    public ResponseEntity<?> revokeSessions(@RequestBody RevocationRequest request) {
+        boolean byRole = request.getRole() != null;
+        boolean byUsernames = request.getUsernames() != null && !request.getUsernames().isEmpty();
+        if (byRole == byUsernames) {
+            return ResponseEntity.badRequest().body("Specify either a role or a list of usernames");
+        }
+
+        RevocationJobResponse job = byRole
+                ? revocationService.revokeRole(request.getRole())
+                : revocationService.revokeUsers(request.getUsernames());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/admin/revocations/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/revocations/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        return revocationService.getJob(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -3,33 +3,45 @@ package com.learnwithiftekhar.redissessionmanagement.controller;
 import com.learnwithiftekhar.redissessionmanagement.dto.LoginRequest;
 import com.learnwithiftekhar.redissessionmanagement.dto.RefreshTokenRequest;
 import com.learnwithiftekhar.redissessionmanagement.dto.RegistrationRequest;
+import com.learnwithiftekhar.redissessionmanagement.security.RateLimiter;
 import com.learnwithiftekhar.redissessionmanagement.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/auth")
 @Slf4j
 public class AuthController {
 
     private final AuthService authService;
+    private final RateLimiter rateLimiter;
 
 
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, RateLimiter rateLimiter) {
         this.authService = authService;
+        this.rateLimiter = rateLimiter;
     }
 
     @PostMapping("/register")
-    public ResponseEntity<?> registerNewUser(@Valid @RequestBody RegistrationRequest registrationRequest) {
-        return ResponseEntity.ok(authService.register(registrationRequest));
+    public ResponseEntity<?> registerNewUser(@Valid @RequestBody RegistrationRequest registrationRequest,
+                                             @RequestHeader(value = HttpHeaders.USER_AGENT, required = false) String userAgent) {
+        return ResponseEntity.ok(authService.register(registrationRequest, userAgent));
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
-        return ResponseEntity.ok(authService.login(loginRequest));
+    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest,
+                                              @RequestHeader(value = HttpHeaders.USER_AGENT, required = false) String userAgent,
+                                              HttpServletRequest request) {
+        // Throttle before the user lookup and BCrypt, which is what credential stuffing costs us
+        rateLimiter.checkLogin(request.getRemoteAddr(), loginRequest.getUsername());
+        return ResponseEntity.ok(authService.login(loginRequest, userAgent));
     }
 
     @PostMapping("/logout")
@@ -38,8 +50,17 @@ public class AuthController {
         return ResponseEntity.ok("You have been signed out");
 
     }
+
+    @PostMapping("/logout-all")
+    public ResponseEntity<?> logoutAll() {
+        authService.logoutAll();
+        return ResponseEntity.ok("You have been signed out on all devices");
+    }
+
     @PostMapping("/refresh")
-    public ResponseEntity<?> refreshToken(@Valid @RequestBody RefreshTokenRequest request) {
+    public ResponseEntity<?> refreshToken(@Valid @RequestBody RefreshTokenRequest request,
+                                          HttpServletRequest servletRequest) {
+        rateLimiter.checkRefresh(servletRequest.getRemoteAddr());
         String refreshToken = request.getRefreshToken();
         return authService.refreshToken(refreshToken);
     }
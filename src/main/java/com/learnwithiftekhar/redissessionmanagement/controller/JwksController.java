@@ -0,0 +1,40 @@
+package com.learnwithiftekhar.redissessionmanagement.controller;
+
+import com.learnwithiftekhar.redissessionmanagement.security.JsonWebKeySet;
+import com.learnwithiftekhar.redissessionmanagement.security.JwtKeyRing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+/**
+ * Publishes the token verification keys so other services can validate tokens locally
+ */
+@RestController
+public class JwksController {
+
+    private static final MediaType JWK_SET = MediaType.parseMediaType("application/jwk-set+json");
+
+    private final JwtKeyRing keyRing;
+    private final CacheControl cacheControl;
+
+    public JwksController(JwtKeyRing keyRing, @Value("${jwt.jwks.max-age}") long maxAgeSeconds) {
+        this.keyRing = keyRing;
+        this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic();
+    }
+
+    // Spring answers a matching If-None-Match (a list, weak validators or *) with 304 from the ETag set here
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<String> jwks() {
+        JsonWebKeySet jwks = keyRing.jwks();
+        return ResponseEntity.ok()
+                .eTag(jwks.etag())
+                .cacheControl(cacheControl)
+                .contentType(JWK_SET)
+                .body(jwks.json());
+    }
+}
@@ -0,0 +1,53 @@
+package com.learnwithiftekhar.redissessionmanagement.controller;
+
+import com.learnwithiftekhar.redissessionmanagement.dto.LoginRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.RefreshTokenRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.RegistrationRequest;
+import com.learnwithiftekhar.redissessionmanagement.service.ReactiveAuthService;
+import jakarta.validation.Valid;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/auth")
+public class ReactiveAuthController {
+
+    private final ReactiveAuthService authService;
+
+
+    public ReactiveAuthController(ReactiveAuthService authService) {
+        this.authService = authService;
+    }
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<?>> registerNewUser(@Valid @RequestBody RegistrationRequest registrationRequest,
+                                                   @RequestHeader(value = HttpHeaders.USER_AGENT, required = false) String userAgent) {
+        return authService.register(registrationRequest, userAgent).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/login")
+    public Mono<ResponseEntity<?>> authenticateUser(@Valid @RequestBody LoginRequest loginRequest,
+                                                    @RequestHeader(value = HttpHeaders.USER_AGENT, required = false) String userAgent) {
+        return authService.login(loginRequest, userAgent).map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<?>> logout() {
+        return authService.logout().thenReturn(ResponseEntity.ok("You have been signed out"));
+    }
+
+    @PostMapping("/logout-all")
+    public Mono<ResponseEntity<?>> logoutAll() {
+        return authService.logoutAll().thenReturn(ResponseEntity.ok("You have been signed out on all devices"));
+    }
+
+    @PostMapping("/refresh")
+    public Mono<ResponseEntity<?>> refreshToken(@Valid @RequestBody RefreshTokenRequest request) {
+        return authService.refreshToken(request.getRefreshToken());
+    }
+}
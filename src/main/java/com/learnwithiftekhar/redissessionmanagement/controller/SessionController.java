@@ -0,0 +1,31 @@
+package com.learnwithiftekhar.redissessionmanagement.controller;
+
+import com.learnwithiftekhar.redissessionmanagement.service.AuthService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/sessions")
+public class SessionController {
+
+    private final AuthService authService;
+
+    public SessionController(AuthService authService) {
+        this.authService = authService;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getSessions() {
+        return ResponseEntity.ok(authService.getSessions());
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<?> revokeSession(@PathVariable String sessionId) {
+        if (!authService.revokeSession(sessionId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok("Session has been revoked");
+    }
+}
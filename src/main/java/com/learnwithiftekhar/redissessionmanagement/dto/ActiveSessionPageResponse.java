@@ -0,0 +1,16 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class ActiveSessionPageResponse {
+    private List<ActiveSessionResponse> sessions;
+    // Pass as ?cursor= to get the next page; null on the last page
+    private String nextCursor;
+}
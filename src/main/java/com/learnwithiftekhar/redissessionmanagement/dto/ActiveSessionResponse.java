@@ -0,0 +1,16 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class ActiveSessionResponse {
+    private String username;
+    private String sessionId;
+    private Instant expiresAt;
+}
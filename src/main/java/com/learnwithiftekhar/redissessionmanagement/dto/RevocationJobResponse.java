@@ -0,0 +1,21 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class RevocationJobResponse {
+    private String jobId;
+    private String status;
+    private long totalUsers;
+    private long revokedUsers;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
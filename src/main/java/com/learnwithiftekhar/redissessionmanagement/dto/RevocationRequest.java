@@ -0,0 +1,19 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import com.learnwithiftekhar.redissessionmanagement.model.Role;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Users whose sessions should be revoked: every user with the given role, or the listed usernames
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+public class RevocationRequest {
+    private Role role;
+    private List<String> usernames;
+}
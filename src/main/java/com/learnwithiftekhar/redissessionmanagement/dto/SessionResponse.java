@@ -0,0 +1,19 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class SessionResponse {
+    private String sessionId;
+    private String device;
+    private Instant createdAt;
+    private Instant lastSeenAt;
+    private Instant expiresAt;
+    private boolean current;
+}
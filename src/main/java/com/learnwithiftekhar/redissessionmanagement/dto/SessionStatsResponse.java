@@ -0,0 +1,13 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class SessionStatsResponse {
+    private long activeUsers;
+    private long activeSessions;
+}
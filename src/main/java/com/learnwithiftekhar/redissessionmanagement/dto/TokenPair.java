@@ -13,4 +13,7 @@ public class TokenPair {
     private String refreshToken;
     private long accessTokenExpirationMs;
     private long refreshTokenExpirationMs;
+    private String sessionId;
+    private String accessTokenId;
+    private String refreshTokenId;
 }
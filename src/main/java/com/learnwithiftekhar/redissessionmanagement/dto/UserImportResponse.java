@@ -0,0 +1,14 @@
+package com.learnwithiftekhar.redissessionmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Setter
+@Getter
+@AllArgsConstructor
+public class UserImportResponse {
+    private long imported;
+    private long duplicates;
+    private long invalid;
+}
@@ -3,12 +3,20 @@ package com.learnwithiftekhar.redissessionmanagement.model;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = @UniqueConstraint(name = "uk_users_username", columnNames = "username"))
+@EntityListeners(UserChangeListener.class)
 public class User {
 
+    // Ids come from a sequence in blocks of ID_ALLOCATION_SIZE; identity columns would disable insert batching
+    public static final String ID_SEQUENCE = "users_seq";
+    private static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
+
+    @Column(nullable = false)
     private String username;
     private String password;
 
@@ -0,0 +1,46 @@
+package com.learnwithiftekhar.redissessionmanagement.model;
+
+import com.learnwithiftekhar.redissessionmanagement.service.CustomUserDetailsService;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Publishes the username of every updated or removed {@link User}, so that each node
+ * evicts its cached UserDetails after a role or password change.
+ */
+@Component
+public class UserChangeListener {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    public UserChangeListener(RedisTemplate<String, Object> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        String username = user.getUsername();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(username);
+            return;
+        }
+
+        // The change is only flushed here; a node reloading the user before the commit
+        // would cache the old row again, so wait until it is visible
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(username);
+            }
+        });
+    }
+
+    private void publish(String username) {
+        redisTemplate.convertAndSend(CustomUserDetailsService.USER_INVALIDATION_CHANNEL, username);
+    }
+}
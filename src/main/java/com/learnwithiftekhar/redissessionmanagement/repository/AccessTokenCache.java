@@ -0,0 +1,110 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Process-local cache of username -> device sessions and epoch in front of a remote {@link TokenStore}.
+ * Sessions are cached per user (a user has at most {@code token.sessions.max-per-user} of them)
+ * so that a single username message invalidates all of them.
+ * Entries are evicted when another node (or this one) publishes a change for the user on
+ * {@link TokenRepository#TOKEN_INVALIDATION_CHANNEL}; the write TTL bounds how long a missed
+ * invalidation can keep a revoked token valid.
+ * Token ids the primary has turned down are remembered for the same time, so a replayed stale
+ * token is rejected locally instead of costing a primary read on every request.
+ */
+@Slf4j
+@Component
+public class AccessTokenCache implements MessageListener {
+
+    private final TokenStore tokenStore;
+    private final SessionLookupBatcher lookupBatcher;
+    private final RedisSerializer<?> messageSerializer;
+    private final Cache<String, UserSessions> cache;
+    private final Cache<String, Boolean> rejectedTokenIds;
+    private final boolean enabled;
+
+    public AccessTokenCache(TokenStore tokenStore,
+                            SessionLookupBatcher lookupBatcher,
+                            RedisTemplate<String, Object> redisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            @Value("${token.near-cache.enabled}") boolean enabled,
+                            @Value("${token.near-cache.max-size}") long maxSize,
+                            @Value("${token.near-cache.max-staleness}") long maxStalenessMs) {
+        this.tokenStore = tokenStore;
+        this.lookupBatcher = lookupBatcher;
+        this.messageSerializer = redisTemplate.getValueSerializer();
+        this.enabled = enabled && tokenStore.isRemote();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(maxStalenessMs))
+                .build();
+        this.rejectedTokenIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(maxStalenessMs))
+                .build();
+
+        if (this.enabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(TokenRepository.TOKEN_INVALIDATION_CHANNEL));
+        }
+    }
+
+    /**
+     * Check whether the given token id is the current access token of the session and was
+     * issued in the user's current epoch. Entries are loaded from replicas where configured;
+     * a cached mismatch is confirmed against the primary, so a fresh login or refresh on
+     * another node is never rejected because of a stale entry or a lagging replica. Tokens of
+     * logged-out sessions are blacklisted and turned away before that primary read.
+     * A token id is recorded as current before the token is handed out and never becomes current
+     * again once replaced, so a rejection by the primary or the blacklist is final and is cached.
+     */
+    public boolean isCurrentAccessToken(String username, String sessionId, String tokenId, long epoch) {
+        if (getSessions(username).isCurrentAccessToken(sessionId, tokenId, epoch)) {
+            return true;
+        }
+        if (!enabled || rejectedTokenIds.getIfPresent(tokenId) != null) {
+            return false;
+        }
+        boolean current = false;
+        if (!tokenStore.isAccessTokenBlacklisted(tokenId)) {
+            UserSessions sessions = tokenStore.getSessions(username);
+            cache.put(username, sessions);
+            current = sessions.isCurrentAccessToken(sessionId, tokenId, epoch);
+        }
+        if (!current) {
+            rejectedTokenIds.put(tokenId, Boolean.TRUE);
+        }
+        return current;
+    }
+
+    /**
+     * Retrieve the sessions and epoch for a user, loading them from Redis on a miss
+     */
+    public UserSessions getSessions(String username) {
+        if (!enabled) {
+            return tokenStore.getSessions(username);
+        }
+        return cache.get(username, lookupBatcher::getSessions);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object username = messageSerializer.deserialize(message.getBody());
+        if (username != null) {
+            cache.invalidate(username.toString());
+        } else {
+            log.warn("Received empty token invalidation message");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A live session in the active session index, ordered like the Redis sorted set:
+ * by refresh token expiry, then by the member's bytes
+ */
+public record ActiveSession(String username, String sessionId, long expiresAt) implements Comparable<ActiveSession> {
+
+    /**
+     * The index member; session ids are UUIDs, so the first ':' separates them from the username
+     */
+    String member() {
+        return sessionId + ":" + username;
+    }
+
+    static ActiveSession fromMember(String member, long expiresAt) {
+        int separator = member.indexOf(':');
+        return new ActiveSession(member.substring(separator + 1), member.substring(0, separator), expiresAt);
+    }
+
+    /**
+     * Opaque cursor that resumes a listing after this session
+     */
+    String cursor() {
+        String position = expiresAt + ":" + member();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The session a cursor resumes after
+     *
+     * @throws IllegalArgumentException when the cursor was not issued by {@link #cursor()}
+     */
+    public static ActiveSession fromCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(':');
+            return fromMember(position.substring(separator + 1), Long.parseLong(position.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    @Override
+    public int compareTo(ActiveSession other) {
+        int byExpiry = Long.compare(expiresAt, other.expiresAt);
+        return byExpiry != 0 ? byExpiry : Arrays.compareUnsigned(
+                member().getBytes(StandardCharsets.UTF_8), other.member().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,20 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.util.List;
+
+/**
+ * One page of the active session index; {@code nextCursor} is null on the last page
+ */
+public record ActiveSessionPage(List<ActiveSession> sessions, String nextCursor) {
+
+    /**
+     * Build a page from up to {@code limit + 1} sessions, the extra one only signalling that more follow
+     */
+    static ActiveSessionPage of(List<ActiveSession> sessions, int limit) {
+        if (sessions.size() <= limit) {
+            return new ActiveSessionPage(sessions, null);
+        }
+        List<ActiveSession> page = sessions.subList(0, limit);
+        return new ActiveSessionPage(List.copyOf(page), page.getLast().cursor());
+    }
+}
@@ -0,0 +1,124 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-node Bloom filter of blacklist keys, so that the common "not blacklisted" answer
+ * needs no Redis round trip. The filter is rebuilt from a SCAN of the blacklist keyspace
+ * on startup and periodically (dropping expired entries), and kept current through the
+ * {@link TokenRepository#BLACKLIST_CHANNEL} messages published by every blacklist write.
+ * Until the first build completes every key is reported as a possible member.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "token.store", havingValue = "redis", matchIfMissing = true)
+public class BlacklistFilter implements MessageListener {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisSerializer<?> messageSerializer;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter rebuilding;
+
+    public BlacklistFilter(RedisTemplate<String, Object> redisTemplate,
+                           RedisMessageListenerContainer listenerContainer,
+                           MeterRegistry meterRegistry,
+                           @Value("${token.blacklist-filter.expected-insertions}") long expectedInsertions,
+                           @Value("${token.blacklist-filter.false-positive-rate}") double falsePositiveRate) {
+        this.redisTemplate = redisTemplate;
+        this.messageSerializer = redisTemplate.getValueSerializer();
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(TokenRepository.BLACKLIST_CHANNEL));
+
+        Gauge.builder("token.blacklist.filter.false.positive.rate", this, BlacklistFilter::expectedFalsePositiveRate)
+                .description("False positive rate implied by the bits set in the blacklist filter")
+                .register(meterRegistry);
+        Gauge.builder("token.blacklist.filter.size", this, BlacklistFilter::sizeInBytes)
+                .description("Memory used by the blacklist filter bit set")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns false only when the key is definitely not blacklisted
+     */
+    public boolean mightContain(String blacklistKey) {
+        BloomFilter filter = current;
+        return filter == null || filter.mightContain(blacklistKey);
+    }
+
+    /**
+     * Record a blacklist key written by this node
+     */
+    public void add(String blacklistKey) {
+        // Read rebuilding first: a key missed by both filters was written before the scan started
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(blacklistKey);
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(blacklistKey);
+        }
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${token.blacklist-filter.rebuild-interval}")
+    public void rebuild() {
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveRate);
+        rebuilding = next;
+
+        long keys = 0;
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(TokenRepository.BLACKLIST_KEY_PATTERN)
+                .count(1000)
+                .build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                next.put(cursor.next());
+                keys++;
+            }
+            current = next;
+            log.info("Rebuilt blacklist filter with {} keys", keys);
+        } catch (Exception e) {
+            log.error("Failed to rebuild blacklist filter: {}", e.getMessage());
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object blacklistKey = messageSerializer.deserialize(message.getBody());
+        if (blacklistKey != null) {
+            add(blacklistKey.toString());
+        }
+    }
+
+    private double expectedFalsePositiveRate() {
+        BloomFilter filter = current;
+        return filter != null ? filter.expectedFalsePositiveRate() : 1.0;
+    }
+
+    private double sizeInBytes() {
+        BloomFilter filter = current;
+        return filter != null ? filter.sizeInBytes() : 0;
+    }
+}
@@ -0,0 +1,232 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.ACCESS_BLACKLIST_PREFIX;
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.REFRESH_BLACKLIST_PREFIX;
+
+/**
+ * Token store kept in this process, for single-node deployments, edge nodes and tests.
+ * Each user's sessions and epoch are an immutable {@link UserSessions} replaced atomically per key,
+ * so reads never lock. Session and blacklist expiry is scheduled on a {@link TimingWheel} advanced
+ * by one scheduled task; reads also check deadlines, so late cleanup never extends a token's life.
+ */
+@Repository
+@ConditionalOnProperty(name = "token.store", havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+
+    private static final UserSessions EMPTY = new UserSessions(0, Map.of());
+
+    private final ConcurrentHashMap<String, UserSessions> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> blacklist = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel;
+    private final int maxSessionsPerUser;
+    private final boolean rejectNew;
+
+    public InMemoryTokenStore(@Value("${token.memory.tick}") long tickMs,
+                              @Value("${token.sessions.max-per-user}") int maxSessionsPerUser,
+                              @Value("${token.sessions.eviction-policy}") String evictionPolicy) {
+        this.timingWheel = new TimingWheel(tickMs, System.currentTimeMillis());
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        this.rejectNew = "reject-new".equalsIgnoreCase(evictionPolicy);
+    }
+
+    @Override
+    public long createSession(String username, String sessionId, SessionRecord session, long epoch) {
+        long now = System.currentTimeMillis();
+        long[] evicted = new long[1];
+
+        users.compute(username, (key, current) -> {
+            UserSessions state = current != null ? current : EMPTY;
+            if (state.epoch() != epoch) {
+                throw new StaleEpochException(username);
+            }
+            Map<String, SessionRecord> sessions = new LinkedHashMap<>(state.sessions());
+            sessions.values().removeIf(existing -> existing.refreshExpiresAt() <= now);
+            sessions.remove(sessionId);
+
+            // Same order as the Redis store: sessions closest to expiry go first
+            while (sessions.size() >= maxSessionsPerUser && !sessions.isEmpty()) {
+                if (rejectNew) {
+                    throw new SessionLimitExceededException(username);
+                }
+                sessions.entrySet().stream()
+                        .min(Comparator.comparingLong(entry -> entry.getValue().refreshExpiresAt()))
+                        .ifPresent(oldest -> sessions.remove(oldest.getKey()));
+                evicted[0]++;
+            }
+
+            sessions.put(sessionId, session);
+            return new UserSessions(state.epoch(), Collections.unmodifiableMap(sessions));
+        });
+
+        timingWheel.schedule(session.refreshExpiresAt(), () -> expireSessions(username));
+        return evicted[0];
+    }
+
+    @Override
+    public RefreshRotation rotateRefreshToken(String username, String sessionId, long epoch, String refreshTokenId,
+                                              String newAccessTokenId, String newRefreshTokenId) {
+        RefreshRotation[] result = {RefreshRotation.INVALID};
+        users.computeIfPresent(username, (key, state) -> {
+            SessionRecord session = state.get(sessionId);
+            if (session == null || state.epoch() != epoch) {
+                return state;
+            }
+            Map<String, SessionRecord> sessions = new LinkedHashMap<>(state.sessions());
+            if (session.refreshTokenId().equals(refreshTokenId)) {
+                sessions.put(sessionId, session.withTokens(newAccessTokenId, newRefreshTokenId, System.currentTimeMillis()));
+                result[0] = RefreshRotation.ROTATED;
+            } else {
+                // A rotated refresh token was replayed, so the session may be in other hands
+                sessions.remove(sessionId);
+                result[0] = RefreshRotation.REUSED;
+            }
+            return retain(new UserSessions(state.epoch(), Collections.unmodifiableMap(sessions)));
+        });
+        return result[0];
+    }
+
+    @Override
+    public UserSessions getSessions(String username) {
+        return users.getOrDefault(username, EMPTY);
+    }
+
+    @Override
+    public long getEpoch(String username) {
+        return getSessions(username).epoch();
+    }
+
+    @Override
+    public boolean removeSession(String username, String sessionId) {
+        boolean[] removed = new boolean[1];
+        users.computeIfPresent(username, (key, state) -> {
+            if (!state.sessions().containsKey(sessionId)) {
+                return state;
+            }
+            Map<String, SessionRecord> sessions = new LinkedHashMap<>(state.sessions());
+            sessions.remove(sessionId);
+            removed[0] = true;
+            return retain(new UserSessions(state.epoch(), Collections.unmodifiableMap(sessions)));
+        });
+        return removed[0];
+    }
+
+    @Override
+    public void removeAllTokens(String username) {
+        // The epoch is kept forever, like the Redis epoch key, so old tokens never match again
+        users.compute(username, (key, state) ->
+                new UserSessions((state != null ? state.epoch() : 0) + 1, Map.of()));
+    }
+
+    // A single node's map is walked rather than indexed; Redis keeps sorted set indexes instead
+    @Override
+    public SessionCounts countActiveSessions() {
+        long now = System.currentTimeMillis();
+        long activeUsers = 0;
+        long activeSessions = 0;
+        for (UserSessions state : users.values()) {
+            long live = state.sessions().values().stream()
+                    .filter(session -> session.refreshExpiresAt() > now)
+                    .count();
+            activeUsers += live > 0 ? 1 : 0;
+            activeSessions += live;
+        }
+        return new SessionCounts(activeUsers, activeSessions);
+    }
+
+    @Override
+    public long countSessions(String username) {
+        long now = System.currentTimeMillis();
+        return getSessions(username).sessions().values().stream()
+                .filter(session -> session.refreshExpiresAt() > now)
+                .count();
+    }
+
+    @Override
+    public ActiveSessionPage listActiveSessions(ActiveSession after, int limit) {
+        long now = System.currentTimeMillis();
+        List<ActiveSession> sessions = users.entrySet().stream()
+                .flatMap(user -> user.getValue().sessions().entrySet().stream()
+                        .filter(session -> session.getValue().refreshExpiresAt() > now)
+                        .map(session -> new ActiveSession(user.getKey(), session.getKey(), session.getValue().refreshExpiresAt())))
+                .filter(session -> after == null || session.compareTo(after) > 0)
+                .sorted()
+                .limit(limit + 1L)
+                .toList();
+        return ActiveSessionPage.of(sessions, limit);
+    }
+
+    @Override
+    public void blacklistAccessToken(String tokenId, Instant expiresAt) {
+        blacklist(ACCESS_BLACKLIST_PREFIX + tokenId, expiresAt);
+    }
+
+    @Override
+    public void blacklistRefreshToken(String tokenId, Instant expiresAt) {
+        blacklist(REFRESH_BLACKLIST_PREFIX + tokenId, expiresAt);
+    }
+
+    private void blacklist(String key, Instant expiresAt) {
+        long expiresAtMs = expiresAt.toEpochMilli();
+        if (expiresAtMs <= System.currentTimeMillis()) {
+            // An expired token is rejected anyway, nothing to store
+            return;
+        }
+        Long stored = blacklist.merge(key, expiresAtMs, Math::max);
+        timingWheel.schedule(stored, () -> blacklist.remove(key, stored));
+    }
+
+    @Override
+    public boolean isAccessTokenBlacklisted(String tokenId) {
+        return isBlacklisted(ACCESS_BLACKLIST_PREFIX + tokenId);
+    }
+
+    @Override
+    public boolean isRefreshTokenBlacklisted(String tokenId) {
+        return isBlacklisted(REFRESH_BLACKLIST_PREFIX + tokenId);
+    }
+
+    private boolean isBlacklisted(String key) {
+        Long expiresAt = blacklist.get(key);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Scheduled(fixedDelayString = "${token.memory.tick}")
+    public void expireEntries() {
+        timingWheel.advance(System.currentTimeMillis());
+    }
+
+    private void expireSessions(String username) {
+        long now = System.currentTimeMillis();
+        users.computeIfPresent(username, (key, state) -> {
+            if (state.sessions().values().stream().noneMatch(session -> session.refreshExpiresAt() <= now)) {
+                return state;
+            }
+            Map<String, SessionRecord> sessions = new LinkedHashMap<>(state.sessions());
+            sessions.values().removeIf(session -> session.refreshExpiresAt() <= now);
+            return retain(new UserSessions(state.epoch(), Collections.unmodifiableMap(sessions)));
+        });
+    }
+
+    // Drop users that have nothing left worth keeping
+    private static UserSessions retain(UserSessions state) {
+        return state.sessions().isEmpty() && state.epoch() == 0 ? null : state;
+    }
+}
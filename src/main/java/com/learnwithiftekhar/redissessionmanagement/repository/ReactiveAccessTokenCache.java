@@ -0,0 +1,103 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking counterpart of {@link AccessTokenCache}. Loads are shared futures, so concurrent
+ * misses for the same user wait on one Redis round trip without holding an event-loop thread.
+ * Rejected token ids are remembered the same way as there.
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+public class ReactiveAccessTokenCache implements MessageListener {
+
+    private final ReactiveTokenRepository tokenRepository;
+    private final RedisSerializer<?> messageSerializer;
+    private final AsyncCache<String, UserSessions> cache;
+    private final Cache<String, Boolean> rejectedTokenIds;
+    private final boolean enabled;
+
+    public ReactiveAccessTokenCache(ReactiveTokenRepository tokenRepository,
+                                    RedisTemplate<String, Object> redisTemplate,
+                                    RedisMessageListenerContainer listenerContainer,
+                                    @Value("${token.near-cache.enabled}") boolean enabled,
+                                    @Value("${token.near-cache.max-size}") long maxSize,
+                                    @Value("${token.near-cache.max-staleness}") long maxStalenessMs) {
+        this.tokenRepository = tokenRepository;
+        this.messageSerializer = redisTemplate.getValueSerializer();
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(maxStalenessMs))
+                .buildAsync();
+        this.rejectedTokenIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(maxStalenessMs))
+                .build();
+
+        if (enabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(TokenRepository.TOKEN_INVALIDATION_CHANNEL));
+        }
+    }
+
+    /**
+     * Check whether the given token id is the current access token of the session and was
+     * issued in the user's current epoch; a cached mismatch is confirmed against Redis unless
+     * the token was blacklisted by a logout or already rejected
+     */
+    public Mono<Boolean> isCurrentAccessToken(String username, String sessionId, String tokenId, long epoch) {
+        return getSessions(username).flatMap(sessions -> {
+            boolean current = sessions.isCurrentAccessToken(sessionId, tokenId, epoch);
+            if (current || !enabled || rejectedTokenIds.getIfPresent(tokenId) != null) {
+                return Mono.just(current);
+            }
+            return tokenRepository.isAccessTokenBlacklisted(tokenId).flatMap(blacklisted -> {
+                if (blacklisted) {
+                    return Mono.just(false);
+                }
+                cache.synchronous().invalidate(username);
+                return getSessions(username).map(fresh -> fresh.isCurrentAccessToken(sessionId, tokenId, epoch));
+            }).doOnNext(confirmed -> {
+                if (!confirmed) {
+                    rejectedTokenIds.put(tokenId, Boolean.TRUE);
+                }
+            });
+        });
+    }
+
+    /**
+     * Retrieve the sessions and epoch for a user, loading them from Redis on a miss
+     */
+    public Mono<UserSessions> getSessions(String username) {
+        if (!enabled) {
+            return tokenRepository.getSessions(username);
+        }
+        return Mono.fromFuture(() -> cache.get(username, (key, executor) -> tokenRepository.getSessions(key).toFuture()));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object username = messageSerializer.deserialize(message.getBody());
+        if (username != null) {
+            cache.synchronous().invalidate(username.toString());
+        } else {
+            log.warn("Received empty token invalidation message");
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.*;
+
+/**
+ * Non-blocking counterpart of {@link TokenRepository} for the reactive profile. It runs the same
+ * scripts against the same key layout and session encoding, so servlet and reactive nodes can
+ * share one Redis during a migration.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveTokenRepository {
+    private static final RedisElementWriter<Object> ARGS_WRITER = RedisElementWriter.from(SCRIPT_ARGS);
+    private static final RedisElementReader<Long> RESULT_READER = RedisElementReader.from(LONG_RESULT);
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisElementReader<List> CLUSTER_RESULT_READER = RedisElementReader.from(CLUSTER_RESULT);
+
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+    private final RedisKeyLayout keys;
+    private final BlacklistFilter blacklistFilter;
+    private final SessionRecordCodec sessionRecordCodec;
+
+    @Value("${token.sessions.max-per-user}")
+    private int maxSessionsPerUser;
+
+    @Value("${token.sessions.eviction-policy}")
+    private String evictionPolicy;
+
+    public ReactiveTokenRepository(ReactiveRedisTemplate<String, byte[]> reactiveTokenRedisTemplate,
+                                   RedisKeyLayout keyLayout,
+                                   BlacklistFilter blacklistFilter,
+                                   @Value("${token.serialization.write-format}") String writeFormat,
+                                   @Value("${token.serialization.read-legacy-json}") boolean readLegacyJson) {
+        this.redisTemplate = reactiveTokenRedisTemplate;
+        this.keys = keyLayout;
+        this.blacklistFilter = blacklistFilter;
+        this.sessionRecordCodec = new SessionRecordCodec("json".equalsIgnoreCase(writeFormat), readLegacyJson);
+    }
+
+    /**
+     * Store a new device session for a user
+     *
+     * @return the number of evicted sessions, or a {@link SessionLimitExceededException} or
+     * {@link StaleEpochException} error
+     * @see TokenRepository#createSession(String, String, SessionRecord, long)
+     */
+    public Mono<Long> createSession(String username, String sessionId, SessionRecord session, long epoch) {
+        return execute(
+                CREATE_SESSION_SCRIPT,
+                CLUSTER_CREATE_SESSION_SCRIPT,
+                keys.creationKeys(username),
+                username,
+                sessionId,
+                session.refreshExpiresAt(),
+                sessionId,
+                sessionRecordCodec.encode(session),
+                session.refreshExpiresAt(),
+                System.currentTimeMillis(),
+                maxSessionsPerUser,
+                evictionPolicy,
+                TOKEN_INVALIDATION_CHANNEL,
+                username,
+                INDEX_CLEANUP_BATCH,
+                epoch
+        ).flatMap(evicted -> {
+            if (evicted == STALE_EPOCH) {
+                return Mono.error(new StaleEpochException(username));
+            }
+            return evicted < 0 ? Mono.error(new SessionLimitExceededException(username)) : Mono.just(evicted);
+        });
+    }
+
+    /**
+     * Rotate the refresh token of a session in one round trip
+     *
+     * @see TokenStore#rotateRefreshToken
+     */
+    public Mono<RefreshRotation> rotateRefreshToken(String username, String sessionId, long epoch, String refreshTokenId,
+                                                    String newAccessTokenId, String newRefreshTokenId) {
+        return execute(
+                ROTATE_REFRESH_TOKEN_SCRIPT,
+                CLUSTER_ROTATE_REFRESH_TOKEN_SCRIPT,
+                keys.rotationKeys(username),
+                username,
+                null,
+                0,
+                rotationArgs(sessionRecordCodec, username, sessionId, epoch, refreshTokenId, newAccessTokenId, newRefreshTokenId)
+        ).map(TokenRepository::toRotation);
+    }
+
+    /**
+     * Retrieve all sessions and the revocation epoch of a user. Both commands are issued
+     * without waiting for each other on the shared connection.
+     */
+    public Mono<UserSessions> getSessions(String username) {
+        Mono<Map<String, SessionRecord>> sessions = redisTemplate.<String, byte[]>opsForHash()
+                .entries(keys.sessions(username))
+                .collect(LinkedHashMap::new,
+                        (map, entry) -> map.put(entry.getKey(), sessionRecordCodec.decode(entry.getValue())));
+
+        return Mono.zip(getEpoch(username), sessions)
+                .map(result -> new UserSessions(result.getT1(), result.getT2()));
+    }
+
+    /**
+     * Retrieve the current revocation epoch of a user
+     */
+    public Mono<Long> getEpoch(String username) {
+        return redisTemplate.opsForValue()
+                .get(keys.epoch(username))
+                .map(TokenRepository::toEpoch)
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Remove a single device session
+     */
+    public Mono<Boolean> removeSession(String username, String sessionId) {
+        return execute(
+                REMOVE_SESSION_SCRIPT,
+                CLUSTER_REMOVE_SESSION_SCRIPT,
+                keys.sessionKeys(username),
+                username,
+                null,
+                0,
+                sessionId,
+                TOKEN_INVALIDATION_CHANNEL,
+                username
+        ).map(removed -> removed == 1);
+    }
+
+    /**
+     * Remove all sessions for a user and bump the user's epoch
+     */
+    public Mono<Void> removeAllTokens(String username) {
+        return execute(
+                REVOKE_ALL_TOKENS_SCRIPT,
+                CLUSTER_REVOKE_ALL_TOKENS_SCRIPT,
+                keys.revocationKeys(username),
+                username,
+                null,
+                0,
+                TOKEN_INVALIDATION_CHANNEL,
+                username
+        ).then();
+    }
+
+    /**
+     * Blacklist the access token with this jti until it expires
+     */
+    public Mono<Void> blacklistAccessToken(String tokenId, Instant expiresAt) {
+        return blacklist(ACCESS_BLACKLIST_PREFIX + tokenId, expiresAt);
+    }
+
+    /**
+     * Blacklist the refresh token with this jti until it expires
+     */
+    public Mono<Void> blacklistRefreshToken(String tokenId, Instant expiresAt) {
+        return blacklist(REFRESH_BLACKLIST_PREFIX + tokenId, expiresAt);
+    }
+
+    private Mono<Void> blacklist(String key, Instant expiresAt) {
+        long remainingMs = Duration.between(Instant.now(), expiresAt).toMillis();
+        if (remainingMs <= 0) {
+            // An expired token is rejected anyway, nothing to store
+            return Mono.empty();
+        }
+        return execute(BLACKLIST_TOKEN_SCRIPT, List.of(key), remainingMs, BLACKLIST_CHANNEL)
+                .doOnNext(written -> blacklistFilter.add(key))
+                .then();
+    }
+
+    /**
+     * Check if the access token with this jti is blacklisted
+     */
+    public Mono<Boolean> isAccessTokenBlacklisted(String tokenId) {
+        return isBlacklisted(ACCESS_BLACKLIST_PREFIX + tokenId);
+    }
+
+    /**
+     * Check if the refresh token with this jti is blacklisted
+     */
+    public Mono<Boolean> isRefreshTokenBlacklisted(String tokenId) {
+        return isBlacklisted(REFRESH_BLACKLIST_PREFIX + tokenId);
+    }
+
+    private Mono<Boolean> isBlacklisted(String key) {
+        return blacklistFilter.mightContain(key) ? redisTemplate.hasKey(key) : Mono.just(false);
+    }
+
+    /**
+     * Run a session script, applying the index changes it reports on a cluster in a second call
+     *
+     * @see TokenRepository.ClusterReply
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Mono<Long> execute(RedisScript<Long> script, RedisScript<List> clusterScript, List<String> scriptKeys,
+                               String username, String addedSessionId, long addedExpiresAt, Object... args) {
+        if (!keys.isClustered()) {
+            return execute(script, scriptKeys, args);
+        }
+        return ((Flux<Object>) (Flux) redisTemplate.execute(clusterScript, scriptKeys, List.of(args), ARGS_WRITER, CLUSTER_RESULT_READER))
+                // The reply may arrive as one list or as its elements
+                .concatMapIterable(reply -> reply instanceof List<?> elements ? elements : List.of(reply))
+                .collectList()
+                .map(reply -> ClusterReply.of(reply, username, addedSessionId, addedExpiresAt))
+                .flatMap(reply -> reply.indexUpdate() == null
+                        ? Mono.just(reply.value())
+                        : execute(UPDATE_SESSION_INDEX_SCRIPT, keys.indexKeys(), reply.indexUpdate()).thenReturn(reply.value()));
+    }
+
+    private Mono<Long> execute(RedisScript<Long> script, List<String> scriptKeys, Object... args) {
+        return redisTemplate.execute(script, scriptKeys, List.of(args), ARGS_WRITER, RESULT_READER)
+                .next()
+                .defaultIfEmpty(0L);
+    }
+}
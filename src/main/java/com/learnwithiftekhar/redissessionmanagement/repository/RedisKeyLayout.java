@@ -0,0 +1,85 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.util.List;
+
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.EPOCH_KEY_PREFIX;
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.SESSIONS_KEY_PREFIX;
+import static com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository.SESSION_EXPIRY_KEY_PREFIX;
+
+/**
+ * Names of the per-user and index keys for the deployed Redis topology.
+ * On a cluster the username is a hash tag, so a user's sessions, session expiry and epoch share a
+ * slot and the session scripts can update them atomically; the two indexes across users share the
+ * {@code {sessions}} slot. Standalone and Sentinel deployments keep the untagged names, so existing
+ * data stays readable.
+ * A script may only touch keys of one slot, so on a cluster the session scripts leave the indexes
+ * to a follow-up {@code update-session-index.lua} call with the changes they report.
+ */
+public class RedisKeyLayout {
+
+    private final boolean clustered;
+
+    public RedisKeyLayout(boolean clustered) {
+        this.clustered = clustered;
+    }
+
+    /**
+     * Whether keys are spread over cluster slots, so a script can only touch one user's keys
+     */
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    public String sessions(String username) {
+        return SESSIONS_KEY_PREFIX + tag(username);
+    }
+
+    public String sessionExpiry(String username) {
+        return SESSION_EXPIRY_KEY_PREFIX + tag(username);
+    }
+
+    public String epoch(String username) {
+        return EPOCH_KEY_PREFIX + tag(username);
+    }
+
+    public String activeSessions() {
+        return clustered ? "{sessions}:active" : TokenRepository.ACTIVE_SESSIONS_KEY;
+    }
+
+    public String activeUsers() {
+        return clustered ? "{sessions}:active-users" : TokenRepository.ACTIVE_USERS_KEY;
+    }
+
+    // Keys of the session scripts: the user's sessions and their expiry, then the indexes across users
+    List<String> sessionKeys(String username) {
+        return clustered
+                ? List.of(sessions(username), sessionExpiry(username))
+                : List.of(sessions(username), sessionExpiry(username), activeSessions(), activeUsers());
+    }
+
+    List<String> creationKeys(String username) {
+        return clustered
+                ? List.of(sessions(username), sessionExpiry(username), epoch(username))
+                : List.of(sessions(username), sessionExpiry(username), epoch(username), activeSessions(), activeUsers());
+    }
+
+    List<String> rotationKeys(String username) {
+        return clustered
+                ? List.of(sessions(username), sessionExpiry(username), epoch(username))
+                : List.of(sessions(username), sessionExpiry(username), epoch(username), activeSessions(), activeUsers());
+    }
+
+    List<String> revocationKeys(String username) {
+        return clustered
+                ? List.of(epoch(username), sessions(username), sessionExpiry(username))
+                : List.of(epoch(username), sessions(username), sessionExpiry(username), activeSessions(), activeUsers());
+    }
+
+    List<String> indexKeys() {
+        return List.of(activeSessions(), activeUsers());
+    }
+
+    private String tag(String username) {
+        return clustered ? "{" + username + "}" : username;
+    }
+}
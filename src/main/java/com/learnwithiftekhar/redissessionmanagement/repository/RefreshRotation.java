@@ -0,0 +1,13 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+/**
+ * Outcome of {@link TokenStore#rotateRefreshToken}
+ */
+public enum RefreshRotation {
+    /** The presented refresh token was current and has been replaced */
+    ROTATED,
+    /** The session no longer exists or the user's epoch has moved on */
+    INVALID,
+    /** The presented refresh token was already rotated away; the session has been revoked */
+    REUSED
+}
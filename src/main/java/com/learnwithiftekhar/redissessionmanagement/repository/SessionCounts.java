@@ -0,0 +1,7 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+/**
+ * Number of users with at least one live session, and of live sessions overall
+ */
+public record SessionCounts(long activeUsers, long activeSessions) {
+}
@@ -0,0 +1,15 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a login would exceed the per-user session limit under the reject-new policy.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class SessionLimitExceededException extends RuntimeException {
+
+    public SessionLimitExceededException(String username) {
+        super("Maximum number of sessions reached for user: " + username);
+    }
+}
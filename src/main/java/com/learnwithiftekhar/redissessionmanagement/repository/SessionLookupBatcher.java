@@ -0,0 +1,185 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coalesces concurrent session lookups into one pipelined read. Callers queue their username and wait;
+ * a single flusher thread takes the first lookup, gathers others that arrive within
+ * {@code token.lookup-batching.window} microseconds (up to {@code max-size}), reads each distinct
+ * user once through {@link TokenStore#getSessionsFromReplica(java.util.Collection)} and hands out
+ * the results. Lookups that queue up while a batch is in flight form the next one, so under load
+ * batches grow without waiting and each caller pays at most one window of extra latency.
+ * Disabled, or with a local store, lookups go straight to the store. So do lookups once the batcher
+ * has stopped, and lookups whose batch has not answered within two windows plus
+ * {@code token.lookup-batching.timeout} milliseconds.
+ */
+@Slf4j
+@Component
+public class SessionLookupBatcher {
+
+    private static final UserSessions NO_SESSIONS = new UserSessions(0, Map.of());
+
+    private final TokenStore tokenStore;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    // A lookup may wait out the batch in flight and then its own window and read
+    private final long maxWaitNanos;
+    private final LinkedBlockingQueue<Lookup> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean stopped;
+
+    private final DistributionSummary batchSizes;
+    private final DistributionSummary distinctUsers;
+    private final Counter fallbacks;
+
+    public SessionLookupBatcher(TokenStore tokenStore,
+                                MeterRegistry meterRegistry,
+                                @Value("${token.lookup-batching.enabled}") boolean enabled,
+                                @Value("${token.lookup-batching.max-size}") int maxBatchSize,
+                                @Value("${token.lookup-batching.window}") long windowMicros,
+                                @Value("${token.lookup-batching.timeout}") long timeoutMs) {
+        this.tokenStore = tokenStore;
+        this.enabled = enabled && tokenStore.isRemote();
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxWaitNanos = 2 * windowNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.batchSizes = DistributionSummary.builder("token.lookup.batch.size")
+                .description("Session lookups answered by one pipelined read")
+                .register(meterRegistry);
+        this.distinctUsers = DistributionSummary.builder("token.lookup.batch.users")
+                .description("Distinct users read by one pipelined read")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("token.lookup.batch.fallbacks")
+                .description("Session lookups read alone because their batch stopped or timed out")
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::run, "session-lookup-batcher");
+        this.flusher.setDaemon(true);
+        if (this.enabled) {
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Retrieve the sessions and epoch of a user, possibly from a replica, together with concurrent lookups
+     */
+    public UserSessions getSessions(String username) {
+        if (!enabled || stopped) {
+            return tokenStore.getSessionsFromReplica(username);
+        }
+        Lookup lookup = new Lookup(username, new CompletableFuture<>());
+        queue.add(lookup);
+        if (stopped && queue.remove(lookup)) {
+            // The flusher may already have drained the queue for the last time
+            return readAlone(username);
+        }
+        try {
+            return lookup.result().get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Batched session lookup of {} timed out, reading it alone", username);
+            return readAlone(username);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a session lookup", e);
+        } catch (ExecutionException e) {
+            if (stopped) {
+                return readAlone(username);
+            }
+            // Surface the store's own exception, as an unbatched lookup would
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private UserSessions readAlone(String username) {
+        fallbacks.increment();
+        return tokenStore.getSessionsFromReplica(username);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopped = true;
+        flusher.interrupt();
+    }
+
+    private void run() {
+        List<Lookup> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    // Whatever is already queued joins without waiting
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Lookup next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Also reached when the flusher dies of an Error; waiters then read alone
+            stopped = true;
+            IllegalStateException failure = new IllegalStateException("Session lookup batcher stopped");
+            batch.forEach(lookup -> lookup.result().completeExceptionally(failure));
+            queue.forEach(lookup -> lookup.result().completeExceptionally(failure));
+        }
+    }
+
+    private void flush(List<Lookup> batch) {
+        Map<String, List<Lookup>> byUser = new LinkedHashMap<>();
+        for (Lookup lookup : batch) {
+            byUser.computeIfAbsent(lookup.username(), username -> new ArrayList<>(1)).add(lookup);
+        }
+        batchSizes.record(batch.size());
+        distinctUsers.record(byUser.size());
+
+        try {
+            Map<String, UserSessions> sessions = tokenStore.getSessionsFromReplica(byUser.keySet());
+            byUser.forEach((username, lookups) -> {
+                // A user missing from the result has no sessions
+                UserSessions result = sessions.getOrDefault(username, NO_SESSIONS);
+                lookups.forEach(lookup -> lookup.result().complete(result));
+            });
+        } catch (Throwable e) {
+            log.warn("Batched session lookup of {} users failed: {}", byUser.size(), e.getMessage());
+            batch.forEach(lookup -> lookup.result().completeExceptionally(e));
+            if (e instanceof Error error) {
+                throw error;
+            }
+        }
+    }
+
+    private record Lookup(String username, CompletableFuture<UserSessions> result) {
+    }
+}
@@ -0,0 +1,18 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+/**
+ * Metadata of one device session, stored in the user's session hash under the session id.
+ * Token ids are the {@code jti} claims of the session's current access and refresh tokens;
+ * times are epoch milliseconds.
+ */
+public record SessionRecord(String accessTokenId,
+                            String refreshTokenId,
+                            String device,
+                            long createdAt,
+                            long lastSeenAt,
+                            long refreshExpiresAt) {
+
+    public SessionRecord withTokens(String newAccessTokenId, String newRefreshTokenId, long seenAt) {
+        return new SessionRecord(newAccessTokenId, newRefreshTokenId, device, createdAt, seenAt, refreshExpiresAt);
+    }
+}
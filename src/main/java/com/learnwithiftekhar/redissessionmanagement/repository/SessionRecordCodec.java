@@ -0,0 +1,169 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of {@link SessionRecord}:
+ * <pre>
+ * version:1 createdAt:8 lastSeenAt:8 refreshExpiresAt:8 accessTokenId refreshTokenId device
+ * </pre>
+ * Each string is a tag byte (0 null, 1 UUID in 16 bytes, 2 UTF-8 with a 2 byte length) followed by its value.
+ * Records written by the previous JSON value serializer start with '{' and can still be read
+ * while {@code readLegacyJson} is set; {@code writeJson} keeps writing them during a rollout.
+ */
+class SessionRecordCodec {
+
+    private static final byte VERSION = 1;
+    private static final byte NULL_TAG = 0;
+    private static final byte UUID_TAG = 1;
+    private static final byte STRING_TAG = 2;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+    private final boolean writeJson;
+    private final boolean readLegacyJson;
+
+    SessionRecordCodec(boolean writeJson, boolean readLegacyJson) {
+        this.writeJson = writeJson;
+        this.readLegacyJson = readLegacyJson;
+    }
+
+    byte[] encode(SessionRecord session) {
+        if (writeJson) {
+            return jsonSerializer.serialize(session);
+        }
+
+        byte[] device = utf8(session.device());
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 3 * Long.BYTES
+                + sizeOfId(session.accessTokenId()) + sizeOfId(session.refreshTokenId())
+                + sizeOfString(session.device(), device));
+
+        buffer.put(VERSION)
+                .putLong(session.createdAt())
+                .putLong(session.lastSeenAt())
+                .putLong(session.refreshExpiresAt());
+        putId(buffer, session.accessTokenId());
+        putId(buffer, session.refreshTokenId());
+        putString(buffer, session.device(), device);
+        return buffer.array();
+    }
+
+    /**
+     * Token id fields as they appear in a binary record, for scripts that compare or splice them
+     */
+    byte[] encodeIds(String... ids) {
+        int size = 0;
+        for (String id : ids) {
+            size += sizeOfId(id);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (String id : ids) {
+            putId(buffer, id);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * A time field as it appears in a binary record
+     */
+    static byte[] encodeTime(long epochMillis) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(epochMillis).array();
+    }
+
+    SessionRecord decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == '{') {
+            if (!readLegacyJson) {
+                throw new SerializationException("Legacy JSON session record found but token.serialization.read-legacy-json is disabled");
+            }
+            return (SessionRecord) jsonSerializer.deserialize(bytes);
+        }
+        if (bytes[0] != VERSION) {
+            throw new SerializationException("Unknown session record version: " + bytes[0]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        long createdAt = buffer.getLong();
+        long lastSeenAt = buffer.getLong();
+        long refreshExpiresAt = buffer.getLong();
+        String accessTokenId = getString(buffer);
+        String refreshTokenId = getString(buffer);
+        String device = getString(buffer);
+        return new SessionRecord(accessTokenId, refreshTokenId, device, createdAt, lastSeenAt, refreshExpiresAt);
+    }
+
+    private static int sizeOfId(String id) {
+        if (id != null && parseUuid(id) != null) {
+            return 1 + 16;
+        }
+        return sizeOfString(id, utf8(id));
+    }
+
+    private static int sizeOfString(String value, byte[] bytes) {
+        return value == null ? 1 : 3 + Math.min(bytes.length, MAX_STRING_BYTES);
+    }
+
+    // Token ids are UUIDs, which take 16 bytes instead of 36 characters
+    private static void putId(ByteBuffer buffer, String id) {
+        UUID uuid = id != null ? parseUuid(id) : null;
+        if (uuid != null) {
+            buffer.put(UUID_TAG)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits());
+        } else {
+            putString(buffer, id, utf8(id));
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value, byte[] bytes) {
+        if (value == null) {
+            buffer.put(NULL_TAG);
+            return;
+        }
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        buffer.put(STRING_TAG)
+                .putShort((short) length)
+                .put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL_TAG:
+                return null;
+            case UUID_TAG:
+                return new UUID(buffer.getLong(), buffer.getLong()).toString();
+            case STRING_TAG:
+                int length = Short.toUnsignedInt(buffer.getShort());
+                String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return value;
+            default:
+                throw new SerializationException("Unknown session record field tag: " + tag);
+        }
+    }
+
+    private static UUID parseUuid(String id) {
+        // Only canonical lower-case UUIDs round-trip through UUID.toString()
+        if (id.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+}
@@ -0,0 +1,15 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a session would be stored for an epoch that a revocation has already moved past.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class StaleEpochException extends RuntimeException {
+
+    public StaleEpochException(String username) {
+        super("Sessions were revoked while signing in user: " + username);
+    }
+}
@@ -0,0 +1,101 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel: four levels of 64 slots, each level's slot spanning a full rotation
+ * of the level below. With a 100 ms tick the levels cover 6.4 s, 6.8 min, 7.3 h and 19.4 days;
+ * later deadlines wait in the last level and are re-placed as it rotates. Scheduling is O(1) and
+ * lock-free; {@link #advance(long)} is called from a single thread and runs tasks whose deadline
+ * has passed, so no per-entry timer is needed.
+ * A task scheduled while the wheel advances may run up to one rotation of its level late, so
+ * callers must treat expiry as cleanup and check deadlines on read.
+ */
+final class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMs;
+    private final Queue<Task>[][] buckets;
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+        this.buckets = new Queue[LEVELS][SLOTS];
+        for (Queue<Task>[] level : buckets) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                level[slot] = new ConcurrentLinkedQueue<>();
+            }
+        }
+    }
+
+    /**
+     * Run the task once the wheel has advanced past the deadline
+     */
+    void schedule(long deadlineMs, Runnable task) {
+        // Round up so a task never runs before its deadline
+        place(new Task((deadlineMs + tickMs - 1) / tickMs, task));
+    }
+
+    /**
+     * Advance the wheel to the given time, running every task that is due
+     *
+     * @return the number of tasks run
+     */
+    int advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        int run = 0;
+        while (currentTick < targetTick) {
+            long tick = currentTick + 1;
+            currentTick = tick;
+
+            // Each time a level wraps, move the next slot of the level above down the wheel
+            for (int level = 1; level < LEVELS && (tick & ((1L << (level * SLOT_BITS)) - 1)) == 0; level++) {
+                Queue<Task> bucket = buckets[level][(int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK];
+                run += drain(bucket, tick);
+            }
+            run += drain(buckets[0][(int) tick & SLOT_MASK], tick);
+        }
+        return run;
+    }
+
+    private int drain(Queue<Task> bucket, long tick) {
+        int run = 0;
+        Task task;
+        while ((task = bucket.poll()) != null) {
+            if (task.deadlineTick() <= tick) {
+                task.action().run();
+                run++;
+            } else {
+                place(task);
+            }
+        }
+        return run;
+    }
+
+    private void place(Task task) {
+        long now = currentTick;
+        // Overdue tasks go to the next slot of the first level
+        long deadlineTick = Math.max(task.deadlineTick(), now + 1);
+        long delta = deadlineTick - now;
+
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << ((level + 1) * SLOT_BITS) || level == LEVELS - 1) {
+                long slotTick = level == LEVELS - 1
+                        ? Math.min(deadlineTick, now + (1L << (LEVELS * SLOT_BITS)) - 1)
+                        : deadlineTick;
+                buckets[level][(int) (slotTick >>> (level * SLOT_BITS)) & SLOT_MASK].add(task);
+                return;
+            }
+        }
+    }
+
+    private record Task(long deadlineTick, Runnable action) {
+    }
+}
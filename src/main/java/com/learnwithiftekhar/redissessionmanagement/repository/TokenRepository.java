@@ -1,147 +1,658 @@
 package com.learnwithiftekhar.redissessionmanagement.repository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Redis {@link TokenStore}, shared by every node. Key names come from the {@link RedisKeyLayout} of the
+ * deployed topology; hot-path reads that tolerate replication lag go to the replica template.
+ */
 @Repository
-public class TokenRepository {
-    private final RedisTemplate<String, Object> redisTemplate;
+@ConditionalOnProperty(name = "token.store", havingValue = "redis", matchIfMissing = true)
+public class TokenRepository implements TokenStore {
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final RedisTemplate<String, byte[]> replicaRedisTemplate;
+    private final RedisKeyLayout keys;
+    private final BlacklistFilter blacklistFilter;
+    private final SessionRecordCodec sessionRecordCodec;
 
-    // Key prefixes for token storage
-    private static final String ACCESS_TOKEN_KEY_PREFIX = "user:access:";
-    private static final String REFRESH_TOKEN_KEY_PREFIX = "user:refresh:";
+    // Key prefixes for device sessions: a hash of session id -> SessionRecord and a
+    // sorted set of session ids scored by refresh token expiry
+    static final String SESSIONS_KEY_PREFIX = "user:sessions:";
+    static final String SESSION_EXPIRY_KEY_PREFIX = "user:session-expiry:";
 
-    // Key prefixes for token blacklisting
-    private static final String ACCESS_BLACKLIST_PREFIX = "blacklist:access:";
-    private static final String REFRESH_BLACKLIST_PREFIX = "blacklist:refresh:";
-    
-    @Value("${jwt.expiration}")
-    private long jwtExpirationMS;
+    // Indexes across users: a sorted set of "session id:username" and one of usernames, scored by
+    // refresh token expiry (a user's latest one), so live sessions and users are counted without KEYS
+    static final String ACTIVE_SESSIONS_KEY = "sessions:active";
+    static final String ACTIVE_USERS_KEY = "sessions:active-users";
 
-    @Value("${jwt.refreshExpiration}")
-    private long refreshTokenExpirationMS;
+    // Expired index entries dropped per session created, so cleanup is spread over writes
+    static final int INDEX_CLEANUP_BATCH = 100;
+
+    // Result of create-session.lua when the user's epoch is no longer the one the session's tokens carry
+    static final long STALE_EPOCH = -2;
+
+    // Per-user revocation epoch, stamped into every token; absent means epoch 0
+    static final String EPOCH_KEY_PREFIX = "user:epoch:";
+
+    // Key prefixes for token blacklisting, followed by the token's jti
+    static final String ACCESS_BLACKLIST_PREFIX = "blacklist:access:";
+    static final String REFRESH_BLACKLIST_PREFIX = "blacklist:refresh:";
+    static final String BLACKLIST_KEY_PATTERN = "blacklist:*";
+
+    // Channel on which a username is published whenever its sessions change
+    public static final String TOKEN_INVALIDATION_CHANNEL = "token:invalidate";
+
+    // Channel on which every new blacklist key is published
+    public static final String BLACKLIST_CHANNEL = "blacklist:added";
+
+    // Add a session, dropping expired ones and enforcing the session limit, in one round trip
+    static final RedisScript<Long> CREATE_SESSION_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/create-session.lua"), Long.class);
+
+    // Compare-and-swap of a session's refresh token, revoking the session when a rotated token is replayed
+    static final RedisScript<Long> ROTATE_REFRESH_TOKEN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/rotate-refresh-token.lua"), Long.class);
+
+    static final RedisScript<Long> REMOVE_SESSION_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/remove-session.lua"), Long.class);
+
+    // INCR the user's epoch and drop all sessions, so revoking all sessions costs one round trip
+    static final RedisScript<Long> REVOKE_ALL_TOKENS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/revoke-all-tokens.lua"), Long.class);
+
+    static final RedisScript<Long> BLACKLIST_TOKEN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/blacklist-token.lua"), Long.class);
+
+    // The session scripts on a cluster, where they report index changes instead of making them
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLUSTER_CREATE_SESSION_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/create-session.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLUSTER_ROTATE_REFRESH_TOKEN_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/rotate-refresh-token.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLUSTER_REMOVE_SESSION_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/remove-session.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLUSTER_REVOKE_ALL_TOKENS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/revoke-all-tokens.lua"), List.class);
+
+    static final RedisScript<Long> UPDATE_SESSION_INDEX_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/update-session-index.lua"), Long.class);
+
+    static final RedisSerializer<Long> LONG_RESULT = new GenericToStringSerializer<>(Long.class);
+
+    // Cluster replies mix integers, which are passed through, and session ids, read as strings; raw
+    // because the deserializer is applied to the elements of a List result
+    @SuppressWarnings("rawtypes")
+    static final RedisSerializer CLUSTER_RESULT = new StringRedisSerializer();
+
+    // Script arguments: byte arrays are passed through, anything else as its UTF-8 string
+    static final RedisSerializer<Object> SCRIPT_ARGS = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(Object value) {
+            return value instanceof byte[] bytes ? bytes : String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    @Value("${token.sessions.max-per-user}")
+    private int maxSessionsPerUser;
+
+    @Value("${token.sessions.eviction-policy}")
+    private String evictionPolicy;
+
+    // One timer per command, registered up front so recording allocates nothing
+    private final Timer createSessionTimer;
+    private final Timer rotateRefreshTokenTimer;
+    private final Timer getSessionsTimer;
+    private final Timer getSessionsBatchTimer;
+    private final Timer getEpochTimer;
+    private final Timer removeSessionTimer;
+    private final Timer removeAllTokensTimer;
+    private final Timer bulkRemoveAllTokensTimer;
+    private final Timer countSessionsTimer;
+    private final Timer listSessionsTimer;
+    private final Timer blacklistTimer;
+    private final Timer blacklistCheckTimer;
+
+    // Blacklist checks answered by the local filter, confirmed by Redis, or filter false positives
+    private final Counter blacklistFiltered;
+    private final Counter blacklistHits;
+    private final Counter blacklistFalsePositives;
 
     @Autowired
-    public TokenRepository(RedisTemplate<String, Object> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    public TokenRepository(RedisTemplate<String, byte[]> tokenRedisTemplate,
+                           RedisTemplate<String, byte[]> replicaTokenRedisTemplate,
+                           RedisKeyLayout keyLayout,
+                           BlacklistFilter blacklistFilter,
+                           MeterRegistry meterRegistry,
+                           @Value("${token.serialization.write-format}") String writeFormat,
+                           @Value("${token.serialization.read-legacy-json}") boolean readLegacyJson) {
+        this.redisTemplate = tokenRedisTemplate;
+        this.replicaRedisTemplate = replicaTokenRedisTemplate;
+        this.keys = keyLayout;
+        this.blacklistFilter = blacklistFilter;
+        this.sessionRecordCodec = new SessionRecordCodec("json".equalsIgnoreCase(writeFormat), readLegacyJson);
+
+        this.createSessionTimer = commandTimer(meterRegistry, "create_session");
+        this.rotateRefreshTokenTimer = commandTimer(meterRegistry, "rotate_refresh_token");
+        this.getSessionsTimer = commandTimer(meterRegistry, "get_sessions");
+        this.getSessionsBatchTimer = commandTimer(meterRegistry, "get_sessions_batch");
+        this.getEpochTimer = commandTimer(meterRegistry, "get_epoch");
+        this.removeSessionTimer = commandTimer(meterRegistry, "remove_session");
+        this.removeAllTokensTimer = commandTimer(meterRegistry, "remove_all_tokens");
+        this.bulkRemoveAllTokensTimer = commandTimer(meterRegistry, "bulk_remove_all_tokens");
+        this.countSessionsTimer = commandTimer(meterRegistry, "count_sessions");
+        this.listSessionsTimer = commandTimer(meterRegistry, "list_sessions");
+        this.blacklistTimer = commandTimer(meterRegistry, "blacklist");
+        this.blacklistCheckTimer = commandTimer(meterRegistry, "blacklist_check");
+        this.blacklistFiltered = blacklistCheckCounter(meterRegistry, "filtered");
+        this.blacklistHits = blacklistCheckCounter(meterRegistry, "hit");
+        this.blacklistFalsePositives = blacklistCheckCounter(meterRegistry, "false_positive");
+    }
+
+    /**
+     * Store a new device session for a user. Expired sessions are dropped and, when the
+     * user is at the session limit, the oldest sessions are evicted or the new one is
+     * rejected depending on {@code token.sessions.eviction-policy}. The epoch is checked by the
+     * same script, see {@link TokenStore#createSession}.
+     *
+     * @return the number of evicted sessions
+     */
+    @Override
+    public long createSession(String username, String sessionId, SessionRecord session, long epoch) {
+        long start = System.nanoTime();
+        Long evicted = executeSessionScript(
+                CREATE_SESSION_SCRIPT,
+                CLUSTER_CREATE_SESSION_SCRIPT,
+                keys.creationKeys(username),
+                username,
+                sessionId,
+                session.refreshExpiresAt(),
+                sessionId,
+                sessionRecordCodec.encode(session),
+                session.refreshExpiresAt(),
+                System.currentTimeMillis(),
+                maxSessionsPerUser,
+                evictionPolicy,
+                TOKEN_INVALIDATION_CHANNEL,
+                username,
+                INDEX_CLEANUP_BATCH,
+                epoch
+        );
+        record(createSessionTimer, start);
+        if (evicted != null && evicted == STALE_EPOCH) {
+            throw new StaleEpochException(username);
+        }
+        if (evicted != null && evicted < 0) {
+            throw new SessionLimitExceededException(username);
+        }
+        return evicted != null ? evicted : 0;
     }
 
     /**
-     * Store both access and refresh tokens for a user
+     * Rotate the refresh token of a session in one round trip, see {@link TokenStore#rotateRefreshToken}
      */
+    @Override
+    public RefreshRotation rotateRefreshToken(String username, String sessionId, long epoch, String refreshTokenId,
+                                              String newAccessTokenId, String newRefreshTokenId) {
+        long start = System.nanoTime();
+        Long result = executeSessionScript(
+                ROTATE_REFRESH_TOKEN_SCRIPT,
+                CLUSTER_ROTATE_REFRESH_TOKEN_SCRIPT,
+                keys.rotationKeys(username),
+                username,
+                null,
+                0,
+                rotationArgs(sessionRecordCodec, username, sessionId, epoch, refreshTokenId, newAccessTokenId, newRefreshTokenId)
+        );
+        record(rotateRefreshTokenTimer, start);
+        return toRotation(result);
+    }
 
-    public void storeTokens(String username,
-                            String accessToken,
-                            String RefreshToken,
-                            long accessTokenExpiration,
-                            long refreshTokenExpiration) {
-        // Store access token
-        String accessKey = ACCESS_TOKEN_KEY_PREFIX + username;
-        redisTemplate.opsForValue().set(accessKey, accessToken);
-        redisTemplate.expire(accessKey, accessTokenExpiration, TimeUnit.MILLISECONDS);
+    /**
+     * Run a session script. On a cluster the script only reaches the user's slot, so the index changes it
+     * reports are applied with a second call to the index slot; a crash in between leaves index entries
+     * that are dropped once they expire.
+     *
+     * @param addedSessionId session indexed when the script succeeds, or null
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Long executeSessionScript(RedisScript<Long> script, RedisScript<List> clusterScript, List<String> scriptKeys,
+                                      String username, String addedSessionId, long addedExpiresAt, Object... args) {
+        if (!keys.isClustered()) {
+            return redisTemplate.execute(script, SCRIPT_ARGS, LONG_RESULT, scriptKeys, args);
+        }
+        List<?> reply = redisTemplate.execute(clusterScript, SCRIPT_ARGS, CLUSTER_RESULT, scriptKeys, args);
+        ClusterReply result = ClusterReply.of(reply, username, addedSessionId, addedExpiresAt);
+        if (result.indexUpdate() != null) {
+            redisTemplate.execute(UPDATE_SESSION_INDEX_SCRIPT, SCRIPT_ARGS, LONG_RESULT, keys.indexKeys(), result.indexUpdate());
+        }
+        return result.value();
+    }
 
+    // Ids and time are passed both plain, for legacy JSON records, and encoded, for binary ones
+    static Object[] rotationArgs(SessionRecordCodec codec, String username, String sessionId, long epoch,
+                                 String refreshTokenId, String newAccessTokenId, String newRefreshTokenId) {
+        long now = System.currentTimeMillis();
+        return new Object[]{
+                sessionId,
+                epoch,
+                refreshTokenId,
+                codec.encodeIds(refreshTokenId),
+                newAccessTokenId,
+                newRefreshTokenId,
+                codec.encodeIds(newAccessTokenId, newRefreshTokenId),
+                now,
+                SessionRecordCodec.encodeTime(now),
+                TOKEN_INVALIDATION_CHANNEL,
+                username
+        };
+    }
 
-        // Store refresh token
-        String refreshKey = REFRESH_TOKEN_KEY_PREFIX + username;
-        redisTemplate.opsForValue().set(refreshKey, RefreshToken);
-        redisTemplate.expire(refreshKey, refreshTokenExpiration, TimeUnit.MILLISECONDS);
+    static RefreshRotation toRotation(Long result) {
+        if (result == null || result == 0) {
+            return RefreshRotation.INVALID;
+        }
+        return result > 0 ? RefreshRotation.ROTATED : RefreshRotation.REUSED;
     }
 
     /**
-     * Retrieve access token for a user
+     * Retrieve all sessions and the revocation epoch of a user in one pipeline
      */
-    public String getAccessToken(String username) {
-        String accessKey = ACCESS_TOKEN_KEY_PREFIX + username;
-        return getToken(accessKey);
+    @Override
+    public UserSessions getSessions(String username) {
+        return readSessions(redisTemplate, username);
     }
 
+    /**
+     * {@link #getSessions(String)} from a replica when {@code token.redis.read-from} allows it, so the
+     * result may lag the primary by the replication delay
+     */
+    @Override
+    public UserSessions getSessionsFromReplica(String username) {
+        return readSessions(replicaRedisTemplate, username);
+    }
 
     /**
-     * Retrieve refresh token for a user
+     * {@link #getSessionsFromReplica(String)} for several users in one pipeline
      */
-    public String getRefreshToken(String username) {
-        String refreshKey = REFRESH_TOKEN_KEY_PREFIX + username;
-        return getToken(refreshKey);
+    @Override
+    public Map<String, UserSessions> getSessionsFromReplica(Collection<String> usernames) {
+        long start = System.nanoTime();
+        List<Object> results = replicaRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                for (String username : usernames) {
+                    operations.opsForValue().get(keys.epoch(username));
+                    operations.opsForHash().entries(keys.sessions(username));
+                }
+                return null;
+            }
+        });
+        record(getSessionsBatchTimer, start);
+
+        Map<String, UserSessions> sessions = new LinkedHashMap<>();
+        int i = 0;
+        for (String username : usernames) {
+            sessions.put(username, toUserSessions(results.get(i), results.get(i + 1)));
+            i += 2;
+        }
+        return sessions;
+    }
+
+    private UserSessions readSessions(RedisTemplate<String, byte[]> template, String username) {
+        long start = System.nanoTime();
+        String epochKey = keys.epoch(username);
+        String sessionsKey = keys.sessions(username);
+
+        List<Object> results = template.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                operations.opsForValue().get(epochKey);
+                operations.opsForHash().entries(sessionsKey);
+                return null;
+            }
+        });
+        record(getSessionsTimer, start);
+        return toUserSessions(results.get(0), results.get(1));
     }
 
-    private String getToken(String accessKey) {
-        Object accessToken = redisTemplate.opsForValue().get(accessKey);
-        return accessToken != null ? accessToken.toString() : null;
+    private UserSessions toUserSessions(Object epoch, Object entries) {
+        Map<String, SessionRecord> sessions = new LinkedHashMap<>();
+        if (entries instanceof Map<?, ?> map) {
+            map.forEach((sessionId, session) ->
+                    sessions.put(sessionId.toString(), sessionRecordCodec.decode((byte[]) session)));
+        }
+        return new UserSessions(toEpoch((byte[]) epoch), sessions);
     }
 
     /**
-     * Remove all tokens for a user (complete logout)
+     * Retrieve the current revocation epoch of a user
      */
-    public void removeAllTokens(String username) {
-        String accessToken = getAccessToken(username);
-        String refreshToken = getRefreshToken(username);
+    @Override
+    public long getEpoch(String username) {
+        long start = System.nanoTime();
+        byte[] epoch = redisTemplate.opsForValue().get(keys.epoch(username));
+        record(getEpochTimer, start);
+        return toEpoch(epoch);
+    }
+
+    // INCR stores the epoch as a decimal string
+    static long toEpoch(byte[] value) {
+        return value != null ? Long.parseLong(new String(value, StandardCharsets.US_ASCII)) : 0;
+    }
 
-        // Remove Tokens
-        String accessKey = ACCESS_TOKEN_KEY_PREFIX + username;
-        String refreshKey = REFRESH_TOKEN_KEY_PREFIX + username;
+    /**
+     * Remove a single device session (logout on one device)
+     */
+    @Override
+    public boolean removeSession(String username, String sessionId) {
+        long start = System.nanoTime();
+        Long removed = executeSessionScript(
+                REMOVE_SESSION_SCRIPT,
+                CLUSTER_REMOVE_SESSION_SCRIPT,
+                keys.sessionKeys(username),
+                username,
+                null,
+                0,
+                sessionId,
+                TOKEN_INVALIDATION_CHANNEL,
+                username
+        );
+        record(removeSessionTimer, start);
+        return removed != null && removed == 1;
+    }
 
-        redisTemplate.delete(accessKey);
-        redisTemplate.delete(refreshKey);
+    /**
+     * Remove all sessions for a user (logout everywhere). Tokens already handed out are
+     * invalidated by bumping the user's epoch rather than blacklisting each of them.
+     */
+    @Override
+    public void removeAllTokens(String username) {
+        long start = System.nanoTime();
+        executeSessionScript(
+                REVOKE_ALL_TOKENS_SCRIPT,
+                CLUSTER_REVOKE_ALL_TOKENS_SCRIPT,
+                keys.revocationKeys(username),
+                username,
+                null,
+                0,
+                TOKEN_INVALIDATION_CHANNEL,
+                username
+        );
+        record(removeAllTokensTimer, start);
+    }
 
-        // Blacklist tokens if they exist
-        if(accessToken != null) {
-            blacklistAccessToken(accessToken, jwtExpirationMS);
+    /**
+     * Remove all sessions of a batch of users in one pipeline of {@code revoke-all-tokens.lua} calls.
+     * The script is loaded first, since a pipelined EVALSHA cannot fall back to EVAL; when Redis has
+     * lost it in the meantime (a restart or failover), it is loaded again and the batch retried once.
+     * Revoking a user twice only bumps the epoch twice.
+     * On a cluster the users' keys are spread over nodes and each call needs a follow-up index
+     * update, so users are revoked one call at a time.
+     */
+    @Override
+    public void removeAllTokens(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        if (keys.isClustered()) {
+            usernames.forEach(this::removeAllTokens);
+            return;
         }
-        if(refreshToken != null) {
-            blacklistRefreshToken(refreshToken, refreshTokenExpirationMS);
+
+        long start = System.nanoTime();
+        try {
+            revokeAllPipelined(usernames);
+        } catch (DataAccessException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            revokeAllPipelined(usernames);
         }
+        record(bulkRemoveAllTokensTimer, start);
+    }
+
+    private void revokeAllPipelined(Collection<String> usernames) {
+        byte[] channel = key(TOKEN_INVALIDATION_CHANNEL);
+        String sha = redisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(key(REVOKE_ALL_TOKENS_SCRIPT.getScriptAsString())));
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String username : usernames) {
+                List<String> scriptKeys = keys.revocationKeys(username);
+                byte[][] keysAndArgs = new byte[scriptKeys.size() + 2][];
+                for (int i = 0; i < scriptKeys.size(); i++) {
+                    keysAndArgs[i] = key(scriptKeys.get(i));
+                }
+                keysAndArgs[scriptKeys.size()] = channel;
+                keysAndArgs[scriptKeys.size() + 1] = key(username);
+                connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, scriptKeys.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count live users and sessions with ZCOUNT over the unexpired range of the indexes,
+     * so entries not yet cleaned up are never counted
+     */
+    @Override
+    public SessionCounts countActiveSessions() {
+        long start = System.nanoTime();
+        double min = System.currentTimeMillis() + 1;
+        List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zCount(key(keys.activeUsers()), min, Double.POSITIVE_INFINITY);
+            connection.zSetCommands().zCount(key(keys.activeSessions()), min, Double.POSITIVE_INFINITY);
+            return null;
+        });
+        record(countSessionsTimer, start);
+        return new SessionCounts(((Number) counts.get(0)).longValue(), ((Number) counts.get(1)).longValue());
+    }
+
+    @Override
+    public long countSessions(String username) {
+        long start = System.nanoTime();
+        Long count = redisTemplate.opsForZSet().count(keys.sessionExpiry(username),
+                System.currentTimeMillis() + 1, Double.POSITIVE_INFINITY);
+        record(countSessionsTimer, start);
+        return count != null ? count : 0;
     }
 
     /**
-     * Remove just the access token used for token refresh scenarios
+     * Page through the active session index by (expiry, member). Redis orders equal scores by
+     * member, so reading from the cursor's score and skipping up to the cursor resumes exactly.
      */
-    public void removeAccessToken(String username) {
-        String accessToken = getAccessToken(username);
-        String accessKey = ACCESS_TOKEN_KEY_PREFIX + username;
-        redisTemplate.delete(accessKey);
+    @Override
+    public ActiveSessionPage listActiveSessions(ActiveSession after, int limit) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<ActiveSession> sessions = new ArrayList<>(limit + 1);
+
+        // Keyset page: sessions sharing the cursor's expiry that sort after it, then the later expiries
+        double min = now + 1;
+        if (after != null && after.expiresAt() > now) {
+            // Expiries in the same millisecond are few, so that run is read whole
+            addSessions(sessions, redisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(keys.activeSessions(), after.expiresAt(), after.expiresAt()), after, limit);
+            // Scores are whole milliseconds, so expiresAt + 1 is the exclusive lower bound for the later expiries
+            min = after.expiresAt() + 1;
+        }
+        if (sessions.size() <= limit) {
+            addSessions(sessions, redisTemplate.opsForZSet().rangeByScoreWithScores(
+                    keys.activeSessions(), min, Double.POSITIVE_INFINITY, 0, limit + 1 - sessions.size()), after, limit);
+        }
+        record(listSessionsTimer, start);
+        return ActiveSessionPage.of(sessions, limit);
+    }
 
-        // Blacklist the access token
-        if(accessToken != null) {
-            blacklistAccessToken(accessToken, jwtExpirationMS);
+    private static void addSessions(List<ActiveSession> sessions, Set<ZSetOperations.TypedTuple<byte[]>> entries,
+                                    ActiveSession after, int limit) {
+        if (entries == null) {
+            return;
+        }
+        for (ZSetOperations.TypedTuple<byte[]> entry : entries) {
+            ActiveSession session = ActiveSession.fromMember(
+                    new String(entry.getValue(), StandardCharsets.UTF_8), entry.getScore().longValue());
+            if ((after == null || session.compareTo(after) > 0) && sessions.size() <= limit) {
+                sessions.add(session);
+            }
         }
     }
 
+    private static byte[] key(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
-     * Blacklist an accessToken
+     * Blacklist an access token until it expires
      */
-    public void blacklistAccessToken(String accessToken, long expirationTimeInMillis) {
-        String key = ACCESS_BLACKLIST_PREFIX + accessToken;
-        redisTemplate.opsForValue().set(key, "blacklisted");
-        redisTemplate.expire(key, expirationTimeInMillis, TimeUnit.MILLISECONDS);
+    @Override
+    public void blacklistAccessToken(String tokenId, Instant expiresAt) {
+        blacklist(ACCESS_BLACKLIST_PREFIX + tokenId, expiresAt);
     }
 
     /**
-     * Blacklist a refresh token
+     * Blacklist a refresh token until it expires
      */
-    public void blacklistRefreshToken(String refreshToken, long expirationTimeInMillis) {
-        String key = REFRESH_BLACKLIST_PREFIX + refreshToken;
-        redisTemplate.opsForValue().set(key, "blacklisted");
-        redisTemplate.expire(key, expirationTimeInMillis, TimeUnit.MILLISECONDS);
+    @Override
+    public void blacklistRefreshToken(String tokenId, Instant expiresAt) {
+        blacklist(REFRESH_BLACKLIST_PREFIX + tokenId, expiresAt);
+    }
+
+    private void blacklist(String key, Instant expiresAt) {
+        long remainingMs = Duration.between(Instant.now(), expiresAt).toMillis();
+        if (remainingMs <= 0) {
+            // An expired token is rejected anyway, nothing to store
+            return;
+        }
+
+        long start = System.nanoTime();
+        redisTemplate.execute(
+                BLACKLIST_TOKEN_SCRIPT,
+                SCRIPT_ARGS,
+                LONG_RESULT,
+                List.of(key),
+                remainingMs,
+                BLACKLIST_CHANNEL
+        );
+        record(blacklistTimer, start);
+        blacklistFilter.add(key);
     }
 
     /**
      * Check if an access token is blacklisted
      */
-    public boolean isAccessTokenBlacklisted(String token) {
-        String key = ACCESS_BLACKLIST_PREFIX + token;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+    @Override
+    public boolean isAccessTokenBlacklisted(String tokenId) {
+        return isBlacklisted(ACCESS_BLACKLIST_PREFIX + tokenId);
     }
 
     /**
      * Check if a refresh token is blacklisted
      */
-    public boolean isRefreshTokenBlacklisted(String token) {
-        String key = REFRESH_BLACKLIST_PREFIX + token;
-        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+    @Override
+    public boolean isRefreshTokenBlacklisted(String tokenId) {
+        return isBlacklisted(REFRESH_BLACKLIST_PREFIX + tokenId);
+    }
+
+    // Only probable hits of the local filter are confirmed with EXISTS. A replica lagging behind a new entry
+    // cannot let a token through for long: logout also removes the session, which rotation checks on the primary.
+    private boolean isBlacklisted(String key) {
+        if (!blacklistFilter.mightContain(key)) {
+            blacklistFiltered.increment();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        boolean blacklisted = Boolean.TRUE.equals(replicaRedisTemplate.hasKey(key));
+        record(blacklistCheckTimer, start);
+        (blacklisted ? blacklistHits : blacklistFalsePositives).increment();
+        return blacklisted;
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer commandTimer(MeterRegistry meterRegistry, String command) {
+        return Timer.builder("token.store.command")
+                .description("Latency of token store commands against Redis")
+                .tag("command", command)
+                .register(meterRegistry);
+    }
+
+    private static Counter blacklistCheckCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("token.blacklist.checks")
+                .description("Blacklist checks by result: filtered locally, hit, or filter false positive")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reply of a session script on a cluster: its result, and the arguments of {@code update-session-index.lua}
+     * for the changes it reported, or null when the indexes are unaffected
+     */
+    record ClusterReply(Long value, Object[] indexUpdate) {
+
+        static ClusterReply of(List<?> reply, String username, String addedSessionId, long addedExpiresAt) {
+            long value = ((Number) reply.get(0)).longValue();
+            long latest = ((Number) reply.get(1)).longValue();
+            String added = addedSessionId != null && value >= 0 ? addedSessionId : "";
+            if (added.isEmpty() && latest < 0 && reply.size() == 2) {
+                return new ClusterReply(value, null);
+            }
+
+            List<Object> args = new ArrayList<>(List.of(username, latest, System.currentTimeMillis(),
+                    INDEX_CLEANUP_BATCH, added, addedExpiresAt));
+            args.addAll(reply.subList(2, reply.size()));
+            return new ClusterReply(value, args.toArray());
+        }
     }
 
 }
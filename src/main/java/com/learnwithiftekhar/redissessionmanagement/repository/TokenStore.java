@@ -0,0 +1,125 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage of device sessions, revocation epochs and blacklisted tokens.
+ * Selected with {@code token.store}: {@code redis} ({@link TokenRepository}) shares state between
+ * nodes, {@code memory} ({@link InMemoryTokenStore}) keeps it in this process.
+ */
+public interface TokenStore {
+
+    /**
+     * Store a new device session for a user. Expired sessions are dropped and, when the
+     * user is at the session limit, the oldest sessions are evicted or the new one is
+     * rejected with a {@link SessionLimitExceededException}, depending on
+     * {@code token.sessions.eviction-policy}. The session is only stored while {@code epoch},
+     * the epoch its tokens are stamped with, is still the user's epoch; otherwise a
+     * {@link StaleEpochException} is thrown and the caller should sign in again.
+     *
+     * @return the number of evicted sessions
+     */
+    long createSession(String username, String sessionId, SessionRecord session, long epoch);
+
+    /**
+     * Rotate the refresh token of a session as one compare-and-swap. When {@code refreshTokenId} is
+     * the session's current refresh token and {@code epoch} the user's current epoch, the session is
+     * pointed at the new access and refresh tokens. An older refresh token of the session means a
+     * rotated token was replayed, so the session is revoked.
+     */
+    RefreshRotation rotateRefreshToken(String username, String sessionId, long epoch, String refreshTokenId,
+                                       String newAccessTokenId, String newRefreshTokenId);
+
+    /**
+     * Retrieve all sessions and the revocation epoch of a user
+     */
+    UserSessions getSessions(String username);
+
+    /**
+     * {@link #getSessions(String)} for the request hot path, which may be served by a replica and lag
+     * recent writes; callers confirm a missing session with {@link #getSessions(String)}
+     */
+    default UserSessions getSessionsFromReplica(String username) {
+        return getSessions(username);
+    }
+
+    /**
+     * {@link #getSessionsFromReplica(String)} for several users; stores that can read them in one round
+     * trip override this
+     */
+    default Map<String, UserSessions> getSessionsFromReplica(Collection<String> usernames) {
+        Map<String, UserSessions> sessions = new LinkedHashMap<>();
+        usernames.forEach(username -> sessions.put(username, getSessionsFromReplica(username)));
+        return sessions;
+    }
+
+    /**
+     * Retrieve the current revocation epoch of a user
+     */
+    long getEpoch(String username);
+
+    /**
+     * Remove a single device session (logout on one device)
+     */
+    boolean removeSession(String username, String sessionId);
+
+    /**
+     * Remove all sessions for a user (logout everywhere) and bump the user's epoch,
+     * so tokens already handed out stop matching
+     */
+    void removeAllTokens(String username);
+
+    /**
+     * {@link #removeAllTokens(String)} for a batch of users, e.g. during incident response.
+     * Stores that can batch the work into one round trip override this.
+     */
+    default void removeAllTokens(Collection<String> usernames) {
+        usernames.forEach(this::removeAllTokens);
+    }
+
+    /**
+     * Count users with a live session and live sessions overall
+     */
+    SessionCounts countActiveSessions();
+
+    /**
+     * Count the live sessions of one user
+     */
+    long countSessions(String username);
+
+    /**
+     * List live sessions of all users in expiry order, resuming after the session a cursor
+     * points to (null for the first page)
+     */
+    ActiveSessionPage listActiveSessions(ActiveSession after, int limit);
+
+    /**
+     * Blacklist the access token with this jti until it expires, e.g. when its session is logged out
+     */
+    void blacklistAccessToken(String tokenId, Instant expiresAt);
+
+    /**
+     * Blacklist the refresh token with this jti until it expires
+     */
+    void blacklistRefreshToken(String tokenId, Instant expiresAt);
+
+    /**
+     * Check if the access token with this jti is blacklisted
+     */
+    boolean isAccessTokenBlacklisted(String tokenId);
+
+    /**
+     * Check if the refresh token with this jti is blacklisted
+     */
+    boolean isRefreshTokenBlacklisted(String tokenId);
+
+    /**
+     * Whether reads leave the process; a local store is not worth a near cache in front of it
+     */
+    default boolean isRemote() {
+        return true;
+    }
+}
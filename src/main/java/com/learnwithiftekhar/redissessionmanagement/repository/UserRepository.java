@@ -1,10 +1,31 @@
 package com.learnwithiftekhar.redissessionmanagement.repository;
 
+import com.learnwithiftekhar.redissessionmanagement.model.Role;
 import com.learnwithiftekhar.redissessionmanagement.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+
+    boolean existsByUsername(String username);
+
+    // Keyset pages in id order, for walking every user without OFFSET scans
+    List<UserKey> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<UserKey> findByRoleAndIdGreaterThanOrderByIdAsc(Role role, Long id, Limit limit);
+
+    List<UserKey> findByUsernameIn(Collection<String> usernames);
+
+    long countByRole(Role role);
+
+    /**
+     * The id and username of a user, for bulk jobs that need nothing else of the entity
+     */
+    record UserKey(Long id, String username) {
+    }
 }
@@ -0,0 +1,29 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import java.util.Map;
+
+/**
+ * The device sessions of a user together with the user's revocation epoch, read in one round trip.
+ */
+public record UserSessions(long epoch, Map<String, SessionRecord> sessions) {
+
+    public SessionRecord get(String sessionId) {
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    /**
+     * Check whether a token is the current access token of a live session in the current epoch
+     */
+    public boolean isCurrentAccessToken(String sessionId, String tokenId, long tokenEpoch) {
+        SessionRecord session = get(sessionId);
+        return session != null && session.accessTokenId().equals(tokenId) && epoch == tokenEpoch;
+    }
+
+    /**
+     * Check whether a token is the current refresh token of a live session in the current epoch
+     */
+    public boolean isCurrentRefreshToken(String sessionId, String tokenId, long tokenEpoch) {
+        SessionRecord session = get(sessionId);
+        return session != null && session.refreshTokenId().equals(tokenId) && epoch == tokenEpoch;
+    }
+}
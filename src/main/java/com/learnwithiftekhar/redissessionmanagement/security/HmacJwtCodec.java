@@ -0,0 +1,536 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.security.SignatureException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes and decodes the one token shape {@link JwtTokenProvider} issues with the shared HMAC secret
+ * ({@code jti iss sub iat exp sid type epoch}, plus {@code authorities} when enabled) without going
+ * through jjwt's maps, Jackson and per-call key handling. The header segment is computed once, and each
+ * platform thread keeps its own {@link Mac} and buffers, so issuing or verifying a token allocates little
+ * more than the resulting string or {@link TokenClaims}.
+ * Anything outside that shape (another header, unknown or duplicate claims, JSON escapes) is left to jjwt:
+ * {@link #encode} and {@link #decode} return null and the caller takes the generic path. Decoding follows
+ * jjwt's checks for this shape: a bad signature or a passed expiry throw the exceptions jjwt would.
+ */
+final class HmacJwtCodec {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final byte[] BASE64_URL_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int[] BASE64_URL_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_URL_VALUES, -1);
+        for (int i = 0; i < BASE64_URL_ALPHABET.length; i++) {
+            BASE64_URL_VALUES[BASE64_URL_ALPHABET[i]] = i;
+        }
+    }
+
+    // Claim names as written; a claim's index in CLAIMS is its bit in the set of claims seen while decoding
+    private static final byte[] JTI = key("jti");
+    private static final byte[] ISS = key("iss");
+    private static final byte[] SUB = key("sub");
+    private static final byte[] IAT = key("iat");
+    private static final byte[] EXP = key("exp");
+    private static final byte[] SID = key(JwtTokenProvider.SESSION_CLAIM);
+    private static final byte[] TYPE = key(JwtTokenProvider.TYPE_CLAIM);
+    private static final byte[] EPOCH = key(JwtTokenProvider.EPOCH_CLAIM);
+    private static final byte[] AUTHORITIES = key(JwtTokenProvider.AUTHORITIES_CLAIM);
+    private static final byte[][] CLAIMS = {JTI, ISS, SUB, IAT, EXP, SID, TYPE, EPOCH, AUTHORITIES};
+
+    private final Mac prototype;
+    private final int signatureLength;
+    private final String headerSegment;
+    private final byte[] headerBytes;
+    private final byte[] issuer;
+    private final ThreadLocal<Buffers> buffers;
+
+    private HmacJwtCodec(Mac prototype, String algorithm, String issuer) {
+        this.prototype = prototype;
+        this.signatureLength = prototype.getMacLength();
+        this.headerSegment = BASE64_URL.encodeToString(
+                ("{\"alg\":\"" + algorithm + "\"}").getBytes(StandardCharsets.US_ASCII));
+        this.headerBytes = headerSegment.getBytes(StandardCharsets.US_ASCII);
+        this.issuer = issuer.getBytes(StandardCharsets.UTF_8);
+        this.buffers = ThreadLocal.withInitial(this::newBuffers);
+    }
+
+    /**
+     * Codec for the given HMAC key, or null when jjwt would sign with it in a way this codec does not write
+     */
+    static HmacJwtCodec forKey(SecretKey key, String issuer) {
+        String algorithm = switch (key.getAlgorithm()) {
+            case "HmacSHA256" -> "HS256";
+            case "HmacSHA384" -> "HS384";
+            case "HmacSHA512" -> "HS512";
+            default -> null;
+        };
+        if (algorithm == null || !isPlain(issuer)) {
+            return null;
+        }
+        try {
+            Mac mac = Mac.getInstance(key.getAlgorithm());
+            mac.init(key);
+            // Threads clone this Mac, which skips the provider lookup and key setup, so cloning must work
+            mac.clone();
+            return new HmacJwtCodec(mac, algorithm, issuer);
+        } catch (GeneralSecurityException | CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Signed token with the given claims, or null when a value needs JSON escaping
+     */
+    String encode(String tokenId, String subject, long issuedAtSeconds, long expiresAtSeconds,
+                  String sessionId, String type, long epoch, List<String> authorities) {
+        if (!isPlain(tokenId) || !isPlain(subject) || !isPlain(sessionId) || !isPlain(type)) {
+            return null;
+        }
+        if (authorities != null && !authorities.stream().allMatch(HmacJwtCodec::isPlain)) {
+            return null;
+        }
+
+        Buffers state = buffers();
+        Buffers.Writer json = state.json;
+        json.reset();
+        json.write('{');
+        json.key(JTI).string(tokenId).write(',');
+        json.key(ISS).quoted(issuer).write(',');
+        json.key(SUB).string(subject).write(',');
+        json.key(IAT).number(issuedAtSeconds).write(',');
+        json.key(EXP).number(expiresAtSeconds).write(',');
+        json.key(SID).string(sessionId).write(',');
+        json.key(TYPE).string(type).write(',');
+        json.key(EPOCH).number(epoch);
+        if (authorities != null) {
+            json.write(',').key(AUTHORITIES).write('[');
+            for (int i = 0; i < authorities.size(); i++) {
+                if (i > 0) {
+                    json.write(',');
+                }
+                json.string(authorities.get(i));
+            }
+            json.write(']');
+        }
+        json.write('}');
+
+        // header.payload.signature, Base64URL-encoded straight into the output buffer
+        Buffers.Writer token = state.token;
+        token.reset();
+        token.write(headerBytes, headerBytes.length).write('.');
+        token.base64Url(json.bytes, json.length);
+        int signedLength = token.length;
+        state.mac.update(token.bytes, 0, signedLength);
+        try {
+            state.mac.doFinal(state.signature, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign token", e);
+        }
+        token.write('.').base64Url(state.signature, signatureLength);
+        return new String(token.bytes, 0, token.length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Claims of a token in the shape this codec writes, or null when jjwt has to handle the token
+     *
+     * @throws SignatureException  when the signature does not match
+     * @throws ExpiredJwtException when the token has expired
+     */
+    TokenClaims decode(String token, boolean withAuthorities) {
+        int headerEnd = headerSegment.length();
+        if (!token.startsWith(headerSegment) || token.length() <= headerEnd || token.charAt(headerEnd) != '.') {
+            return null;
+        }
+        int payloadEnd = token.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || token.indexOf('.', payloadEnd + 1) >= 0) {
+            return null;
+        }
+
+        Buffers state = buffers();
+        Buffers.Writer signed = state.token;
+        signed.reset();
+        for (int i = 0; i < payloadEnd; i++) {
+            char c = token.charAt(i);
+            if (c >= 128) {
+                return null;
+            }
+            signed.write(c);
+        }
+
+        // Signature first, so nothing of an unverified payload is parsed
+        if (decodeBase64Url(token, payloadEnd + 1, token.length(), state.received) != signatureLength) {
+            return null;
+        }
+        state.mac.update(signed.bytes, 0, payloadEnd);
+        try {
+            state.mac.doFinal(state.signature, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to verify token", e);
+        }
+        if (!MessageDigest.isEqual(state.signature, state.received)) {
+            throw new SignatureException("JWT signature does not match");
+        }
+
+        Buffers.Writer json = state.json;
+        json.reset();
+        int payloadLength = decodeBase64Url(token, headerEnd + 1, payloadEnd, json.ensure(payloadEnd - headerEnd));
+        if (payloadLength < 0) {
+            return null;
+        }
+        Parsed claims = new Parser(json.bytes, payloadLength).parse();
+        if (claims == null || claims.issuedAt == null || claims.expiresAt == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() > claims.expiresAt * 1000) {
+            throw new ExpiredJwtException(null, null, "JWT expired at " + Instant.ofEpochSecond(claims.expiresAt));
+        }
+
+        return new TokenClaims(
+                claims.subject,
+                claims.type,
+                Instant.ofEpochSecond(claims.expiresAt),
+                Instant.ofEpochSecond(claims.issuedAt),
+                claims.id,
+                claims.sessionId,
+                claims.epoch,
+                withAuthorities ? claims.authorities : null
+        );
+    }
+
+    // Virtual threads are not reused, so they get fresh state rather than filling thread locals
+    private Buffers buffers() {
+        return Thread.currentThread().isVirtual() ? newBuffers() : buffers.get();
+    }
+
+    private Buffers newBuffers() {
+        try {
+            return new Buffers((Mac) prototype.clone(), signatureLength);
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decode unpadded Base64URL from part of a string
+     *
+     * @return the number of bytes written, or -1 when the input is not canonical Base64URL
+     */
+    private static int decodeBase64Url(String source, int from, int to, byte[] target) {
+        int length = to - from;
+        if (length % 4 == 1 || length * 3 / 4 > target.length) {
+            return -1;
+        }
+        int written = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            int value = c < 128 ? BASE64_URL_VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = bits << 6 | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                target[written++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        // Leftover bits must be zero, as jjwt's decoder requires
+        return bits == 0 ? written : -1;
+    }
+
+    // Printable ASCII without quotes or backslashes needs no escaping in JSON
+    private static boolean isPlain(String value) {
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] key(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Per-thread Mac and growable byte buffers
+     */
+    private static final class Buffers {
+        private final Mac mac;
+        private final byte[] signature;
+        private final byte[] received;
+        private final Writer json = new Writer(512);
+        private final Writer token = new Writer(1024);
+
+        private Buffers(Mac mac, int signatureLength) {
+            this.mac = mac;
+            this.signature = new byte[signatureLength];
+            this.received = new byte[signatureLength];
+        }
+
+        private static final class Writer {
+            private byte[] bytes;
+            private int length;
+
+            private Writer(int capacity) {
+                this.bytes = new byte[capacity];
+            }
+
+            void reset() {
+                length = 0;
+            }
+
+            byte[] ensure(int capacity) {
+                if (bytes.length < capacity) {
+                    bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+                }
+                return bytes;
+            }
+
+            Writer write(int b) {
+                ensure(length + 1);
+                bytes[length++] = (byte) b;
+                return this;
+            }
+
+            Writer write(byte[] source, int count) {
+                ensure(length + count);
+                System.arraycopy(source, 0, bytes, length, count);
+                length += count;
+                return this;
+            }
+
+            Writer key(byte[] name) {
+                return quoted(name).write(':');
+            }
+
+            Writer quoted(byte[] value) {
+                return write('"').write(value, value.length).write('"');
+            }
+
+            // Only called with values that passed isPlain, so each char is one byte
+            Writer string(String value) {
+                ensure(length + value.length() + 2);
+                bytes[length++] = '"';
+                for (int i = 0; i < value.length(); i++) {
+                    bytes[length++] = (byte) value.charAt(i);
+                }
+                bytes[length++] = '"';
+                return this;
+            }
+
+            Writer number(long value) {
+                if (value == Long.MIN_VALUE) {
+                    byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+                    return write(digits, digits.length);
+                }
+                if (value < 0) {
+                    write('-');
+                    value = -value;
+                }
+                int digits = 1;
+                for (long rest = value / 10; rest > 0; rest /= 10) {
+                    digits++;
+                }
+                ensure(length + digits);
+                for (int i = length + digits - 1; i >= length; i--) {
+                    bytes[i] = (byte) ('0' + value % 10);
+                    value /= 10;
+                }
+                length += digits;
+                return this;
+            }
+
+            Writer base64Url(byte[] source, int count) {
+                ensure(length + (count * 4 + 2) / 3);
+                int i = 0;
+                for (; i + 2 < count; i += 3) {
+                    int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8 | source[i + 2] & 0xff;
+                    bytes[length++] = BASE64_URL_ALPHABET[bits >>> 18];
+                    bytes[length++] = BASE64_URL_ALPHABET[bits >>> 12 & 0x3f];
+                    bytes[length++] = BASE64_URL_ALPHABET[bits >>> 6 & 0x3f];
+                    bytes[length++] = BASE64_URL_ALPHABET[bits & 0x3f];
+                }
+                if (i < count) {
+                    int bits = (source[i] & 0xff) << 16 | (i + 1 < count ? (source[i + 1] & 0xff) << 8 : 0);
+                    bytes[length++] = BASE64_URL_ALPHABET[bits >>> 18];
+                    bytes[length++] = BASE64_URL_ALPHABET[bits >>> 12 & 0x3f];
+                    if (i + 1 < count) {
+                        bytes[length++] = BASE64_URL_ALPHABET[bits >>> 6 & 0x3f];
+                    }
+                }
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Claims read by {@link Parser}; iat and exp stay null when absent
+     */
+    private static final class Parsed {
+        private String id;
+        private String subject;
+        private Long issuedAt;
+        private Long expiresAt;
+        private String sessionId;
+        private String type;
+        private long epoch;
+        private List<String> authorities;
+    }
+
+    /**
+     * Reads a flat JSON object of the known claims, written without whitespace or escapes.
+     * Returns null for anything else, which sends the token to jjwt.
+     */
+    private static final class Parser {
+        private final byte[] bytes;
+        private final int length;
+        private int position;
+
+        private Parser(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        Parsed parse() {
+            Parsed claims = new Parsed();
+            int seen = 0;
+            if (!consume('{')) {
+                return null;
+            }
+            if (consume('}')) {
+                return position == length ? claims : null;
+            }
+            do {
+                int claim = claim();
+                if (claim < 0 || (seen & 1 << claim) != 0 || !consume(':')) {
+                    return null;
+                }
+                seen |= 1 << claim;
+                if (!value(claims, CLAIMS[claim])) {
+                    return null;
+                }
+            } while (consume(','));
+            return consume('}') && position == length ? claims : null;
+        }
+
+        private boolean value(Parsed claims, byte[] claim) {
+            if (claim == JTI) {
+                return (claims.id = string()) != null;
+            } else if (claim == ISS) {
+                return string() != null;
+            } else if (claim == SUB) {
+                return (claims.subject = string()) != null;
+            } else if (claim == IAT) {
+                return (claims.issuedAt = number()) != null;
+            } else if (claim == EXP) {
+                return (claims.expiresAt = number()) != null;
+            } else if (claim == SID) {
+                return (claims.sessionId = string()) != null;
+            } else if (claim == TYPE) {
+                return (claims.type = string()) != null;
+            } else if (claim == EPOCH) {
+                Long epoch = number();
+                claims.epoch = epoch != null ? epoch : 0;
+                return epoch != null;
+            }
+            return (claims.authorities = strings()) != null;
+        }
+
+        // Index of the claim name at the current position, or -1 for any other name
+        private int claim() {
+            for (int i = 0; i < CLAIMS.length; i++) {
+                byte[] name = CLAIMS[i];
+                int end = position + name.length + 2;
+                if (end <= length && bytes[position] == '"' && bytes[end - 1] == '"'
+                        && Arrays.equals(bytes, position + 1, end - 1, name, 0, name.length)) {
+                    position = end;
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String string() {
+            if (!consume('"')) {
+                return null;
+            }
+            int start = position;
+            while (position < length && bytes[position] != '"') {
+                if (bytes[position] == '\\' || (bytes[position] >= 0 && bytes[position] < 0x20)) {
+                    return null;
+                }
+                position++;
+            }
+            if (position == length) {
+                return null;
+            }
+            return new String(bytes, start, position++ - start, StandardCharsets.UTF_8);
+        }
+
+        private Long number() {
+            int start = position;
+            boolean negative = consume('-');
+            long value = 0;
+            int digits = 0;
+            while (position < length && bytes[position] >= '0' && bytes[position] <= '9') {
+                if (digits++ == 18) {
+                    return null;
+                }
+                value = value * 10 + (bytes[position++] - '0');
+            }
+            // Fractions, exponents and leading zeros are left to jjwt
+            if (digits == 0 || (digits > 1 && bytes[start + (negative ? 1 : 0)] == '0')
+                    || (position < length && (bytes[position] == '.' || bytes[position] == 'e' || bytes[position] == 'E'))) {
+                return null;
+            }
+            return negative ? -value : value;
+        }
+
+        private List<String> strings() {
+            if (!consume('[')) {
+                return null;
+            }
+            List<String> values = new ArrayList<>(2);
+            if (consume(']')) {
+                return values;
+            }
+            do {
+                String value = string();
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            } while (consume(','));
+            return consume(']') ? List.copyOf(values) : null;
+        }
+
+        private boolean consume(char expected) {
+            if (position < length && bytes[position] == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+/**
+ * A serialized JWK Set with its entity tag, as served at {@code /.well-known/jwks.json}
+ */
+public record JsonWebKeySet(String json, String etag, long loadedAt) {
+}
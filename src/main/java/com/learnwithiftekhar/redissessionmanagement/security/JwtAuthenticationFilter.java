@@ -1,31 +1,64 @@
 package com.learnwithiftekhar.redissessionmanagement.security;
 
-import com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository;
+import com.learnwithiftekhar.redissessionmanagement.repository.AccessTokenCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
+@Profile("!reactive")
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final UserDetailsService userDetailsService;
-    private final TokenRepository tokenRepository;
+    private final AccessTokenCache accessTokenCache;
+
+    // Meters are registered once, so recording on the request path allocates nothing
+    private final Timer extractTimer;
+    private final Timer verifyTimer;
+    private final Timer sessionLookupTimer;
+    private final Timer userLoadTimer;
+    private final Counter anonymousRequests;
+    private final Counter invalidTokens;
+    private final Counter revokedTokens;
+    private final Counter authenticatedRequests;
+
+    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider,
+                                   UserDetailsService userDetailsService,
+                                   AccessTokenCache accessTokenCache,
+                                   MeterRegistry meterRegistry) {
+        this.tokenProvider = tokenProvider;
+        this.userDetailsService = userDetailsService;
+        this.accessTokenCache = accessTokenCache;
+
+        this.extractTimer = stageTimer(meterRegistry, "extract");
+        this.verifyTimer = stageTimer(meterRegistry, "verify");
+        this.sessionLookupTimer = stageTimer(meterRegistry, "session_lookup");
+        this.userLoadTimer = stageTimer(meterRegistry, "user_load");
+        this.anonymousRequests = outcomeCounter(meterRegistry, "anonymous");
+        this.invalidTokens = outcomeCounter(meterRegistry, "invalid");
+        this.revokedTokens = outcomeCounter(meterRegistry, "revoked");
+        this.authenticatedRequests = outcomeCounter(meterRegistry, "authenticated");
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -33,28 +66,44 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
 
         try {
+            long start = System.nanoTime();
             String jwt = getJwtFromRequest(request);
+            long extracted = record(extractTimer, start);
 
-            if(StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
+            if (!StringUtils.hasText(jwt)) {
+                anonymousRequests.increment();
+                filterChain.doFilter(request, response);
+                return;
+            }
+
+            TokenClaims claims = tokenProvider.verifyToken(jwt).orElse(null);
+            long verified = record(verifyTimer, extracted);
 
-                String username = tokenProvider.getUsernameFromToken(jwt);
+            if(claims != null) {
 
-                // Verify toke matches stored token for user
-                String storedToken = tokenRepository.getAccessToken(username);
+                String username = claims.subject();
 
-                if(storedToken == null || !storedToken.equals(jwt)) {
+                // Verify token is the current access token of its session and revocation epoch
+                boolean current = accessTokenCache.isCurrentAccessToken(username, claims.sessionId(), claims.id(), claims.epoch());
+                long lookedUp = record(sessionLookupTimer, verified);
+                if(!current) {
                     log.warn("Token mismatch for user: {}", username);
+                    revokedTokens.increment();
                     filterChain.doFilter(request, response);
                     return;
                 }
 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+                UserDetails userDetails = loadUserDetails(claims);
+                record(userLoadTimer, lookedUp);
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities()
                 );
 
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                authentication.setDetails(new SessionAuthenticationDetails(request, claims.sessionId()));
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                authenticatedRequests.increment();
+            } else {
+                invalidTokens.increment();
             }
         } catch (Exception e) {
             log.error(e.getMessage());
@@ -63,8 +112,43 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     }
 
+    /**
+     * Build the principal from the token when it carries authorities,
+     * otherwise load the user from the UserDetailsService
+     */
+    private UserDetails loadUserDetails(TokenClaims claims) {
+        if (claims.authorities() != null) {
+            return User.withUsername(claims.subject())
+                    .password("")
+                    .authorities(AuthorityUtils.createAuthorityList(claims.authorities()))
+                    .build();
+        }
+        return userDetailsService.loadUserByUsername(claims.subject());
+    }
+
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         return tokenProvider.extractTokenFromHeader(bearerToken);
     }
+
+    // Records the time since start and returns the current time as the start of the next stage
+    private static long record(Timer timer, long start) {
+        long now = System.nanoTime();
+        timer.record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+        return Timer.builder("auth.filter.stage")
+                .description("Time spent in each stage of JWT request authentication")
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("auth.filter.requests")
+                .description("Requests seen by the JWT filter, by authentication outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
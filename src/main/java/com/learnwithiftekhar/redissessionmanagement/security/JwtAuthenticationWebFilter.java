@@ -0,0 +1,103 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import com.learnwithiftekhar.redissessionmanagement.repository.ReactiveAccessTokenCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+
+/**
+ * Reactive equivalent of {@link JwtAuthenticationFilter}. The signature check runs on the event
+ * loop, session lookups go through the non-blocking near cache and only a user lookup that is
+ * not answered by the token itself, or a signing key that has to be read from Redis, is moved
+ * off the event loop.
+ * Not a bean, so that WebFlux does not also register it outside the security filter chain.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class JwtAuthenticationWebFilter implements WebFilter {
+
+    private final JwtTokenProvider tokenProvider;
+    private final UserDetailsService userDetailsService;
+    private final ReactiveAccessTokenCache accessTokenCache;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String jwt = tokenProvider.extractTokenFromHeader(
+                exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+        if (!StringUtils.hasText(jwt)) {
+            return chain.filter(exchange);
+        }
+
+        return verifyToken(jwt)
+                .flatMap(claims -> claims.map(this::authenticate).orElseGet(Mono::empty))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(authentication -> authentication
+                        .map(auth -> chain.filter(exchange)
+                                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(auth)))
+                        .orElseGet(() -> chain.filter(exchange)));
+    }
+
+    private Mono<Optional<TokenClaims>> verifyToken(String jwt) {
+        if (tokenProvider.needsKeyLoad(jwt)) {
+            return Mono.fromCallable(() -> tokenProvider.verifyToken(jwt))
+                    .subscribeOn(Schedulers.boundedElastic());
+        }
+        return Mono.just(tokenProvider.verifyToken(jwt));
+    }
+
+    private Mono<Authentication> authenticate(TokenClaims claims) {
+        String username = claims.subject();
+
+        // Verify token is the current access token of its session and revocation epoch
+        return accessTokenCache.isCurrentAccessToken(username, claims.sessionId(), claims.id(), claims.epoch())
+                .flatMap(current -> {
+                    if (!current) {
+                        log.warn("Token mismatch for user: {}", username);
+                        return Mono.empty();
+                    }
+                    return loadUserDetails(claims);
+                })
+                .map(userDetails -> {
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                            userDetails, null, userDetails.getAuthorities()
+                    );
+                    authentication.setDetails(new ReactiveSessionDetails(claims.sessionId()));
+                    return (Authentication) authentication;
+                })
+                .onErrorResume(e -> {
+                    log.error(e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Build the principal from the token when it carries authorities,
+     * otherwise load the user from the blocking UserDetailsService on a worker thread
+     */
+    private Mono<UserDetails> loadUserDetails(TokenClaims claims) {
+        if (claims.authorities() != null) {
+            return Mono.just(User.withUsername(claims.subject())
+                    .password("")
+                    .authorities(AuthorityUtils.createAuthorityList(claims.authorities()))
+                    .build());
+        }
+        return Mono.fromCallable(() -> userDetailsService.loadUserByUsername(claims.subject()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
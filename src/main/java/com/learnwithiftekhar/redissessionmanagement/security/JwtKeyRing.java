@@ -0,0 +1,255 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Asymmetric signing keys for {@link JwtTokenProvider} when {@code jwt.signing.algorithm} is ES256 or EdDSA.
+ * Every node signs with its own private key, which never leaves the process, and publishes the public
+ * half as a JWK in the {@value #JWKS_KEY} Redis hash, where other nodes and downstream services find it
+ * by {@code kid}. Keys rotate every {@code jwt.signing.rotation-interval}; the next key is published one
+ * interval before it signs anything, so cached key sets already contain it, and published keys are kept
+ * until every token they signed has expired.
+ * Nodes verify against a local copy of the published keys, reloaded once per {@code jwt.jwks.max-age}
+ * and, for a kid it does not contain, at most once per {@code jwt.jwks.unknown-kid-reload-interval}.
+ */
+@Slf4j
+@Component
+public class JwtKeyRing {
+
+    static final String JWKS_KEY = "jwt:jwks";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final SignatureAlgorithm algorithm;
+    private final long retentionMs;
+    private final long jwksMaxAgeMs;
+    private final long unknownKidReloadMs;
+
+    // Published public keys by kid, replaced as a whole on reload; forged kids share the reload budget
+    private volatile Map<String, VerificationKey> verificationKeys = Map.of();
+    private volatile long verificationKeysLoadedAt;
+
+    private volatile SigningKey current;
+    private volatile SigningKey next;
+    private volatile JsonWebKeySet jwks;
+
+    public JwtKeyRing(RedisTemplate<String, Object> redisTemplate,
+                      @Value("${jwt.signing.algorithm}") String algorithm,
+                      @Value("${jwt.signing.rotation-interval}") long rotationIntervalMs,
+                      @Value("${jwt.refreshExpiration}") long refreshTokenExpirationMs,
+                      @Value("${jwt.jwks.max-age}") long jwksMaxAgeSeconds,
+                      @Value("${jwt.jwks.unknown-kid-reload-interval}") long unknownKidReloadMs) {
+        this.redisTemplate = redisTemplate;
+        this.algorithm = switch (algorithm.toUpperCase()) {
+            case "HMAC" -> null;
+            case "ES256" -> Jwts.SIG.ES256;
+            case "EDDSA" -> Jwts.SIG.EdDSA;
+            default -> throw new IllegalArgumentException("Unsupported jwt.signing.algorithm: " + algorithm);
+        };
+        // A key is next for one interval and current for another, then must outlive the tokens it signed
+        this.retentionMs = 2 * rotationIntervalMs + refreshTokenExpirationMs;
+        this.jwksMaxAgeMs = Duration.ofSeconds(jwksMaxAgeSeconds).toMillis();
+        this.unknownKidReloadMs = unknownKidReloadMs;
+    }
+
+    @PostConstruct
+    void init() {
+        if (isAsymmetric()) {
+            current = publish(generate());
+            next = publish(generate());
+            log.info("Signing tokens with {} key {}", algorithm.getId(), current.kid());
+        }
+    }
+
+    /**
+     * Whether tokens are signed with the key ring rather than the shared HMAC secret
+     */
+    public boolean isAsymmetric() {
+        return algorithm != null;
+    }
+
+    SigningKey currentSigningKey() {
+        return current;
+    }
+
+    /**
+     * Public key for the given kid, or null when no live key with that id is published.
+     * May reload the published keys from Redis, see {@link #canVerifyLocally(String)}.
+     */
+    PublicKey verificationKey(String kid) {
+        if (!isAsymmetric()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        VerificationKey key = verificationKeys.get(kid);
+        if (isReloadDue(key, now)) {
+            key = reloadVerificationKeys(kid, now).get(kid);
+        }
+        return key != null && key.retainUntil() > now ? key.publicKey() : null;
+    }
+
+    /**
+     * Whether {@link #verificationKey(String)} answers the kid without a Redis read
+     */
+    boolean canVerifyLocally(String kid) {
+        return !isAsymmetric() || !isReloadDue(verificationKeys.get(kid), System.currentTimeMillis());
+    }
+
+    private boolean isReloadDue(VerificationKey key, long now) {
+        return verificationKeysLoadedAt + (key != null ? jwksMaxAgeMs : unknownKidReloadMs) <= now;
+    }
+
+    /**
+     * The published public keys as a JWK Set, reloaded from Redis at most once per {@code jwt.jwks.max-age}
+     */
+    public JsonWebKeySet jwks() {
+        JsonWebKeySet keySet = jwks;
+        if (keySet == null || keySet.loadedAt() + jwksMaxAgeMs <= System.currentTimeMillis()) {
+            keySet = loadJwks();
+            jwks = keySet;
+        }
+        return keySet;
+    }
+
+    @Scheduled(initialDelayString = "${jwt.signing.rotation-interval}", fixedDelayString = "${jwt.signing.rotation-interval}")
+    public void rotate() {
+        if (!isAsymmetric()) {
+            return;
+        }
+        current = next;
+        next = publish(generate());
+        jwks = null;
+        log.info("Rotated signing key to {}", current.kid());
+
+        // Any node may drop keys whose tokens have all expired, with one HDEL
+        long now = System.currentTimeMillis();
+        List<Object> retired = new ArrayList<>();
+        redisTemplate.opsForHash().entries(JWKS_KEY).forEach((kid, value) -> {
+            if (!(value instanceof PublishedJwk published) || published.retainUntil() <= now) {
+                retired.add(kid);
+            }
+        });
+        if (!retired.isEmpty()) {
+            redisTemplate.opsForHash().delete(JWKS_KEY, retired.toArray());
+        }
+    }
+
+    private SigningKey generate() {
+        KeyPair keyPair = algorithm == Jwts.SIG.EdDSA
+                ? Jwks.CRV.Ed25519.keyPair().build()
+                : algorithm.keyPair().build();
+        PublicJwk<PublicKey> jwk = Jwks.builder()
+                .key(keyPair.getPublic())
+                .algorithm(algorithm.getId())
+                .publicKeyUse("sig")
+                .idFromThumbprint()
+                .build();
+
+        return new SigningKey(jwk.getId(), keyPair.getPrivate(), keyPair.getPublic(), algorithm, Jwks.json(jwk));
+    }
+
+    private SigningKey publish(SigningKey key) {
+        long retainUntil = System.currentTimeMillis() + retentionMs;
+        redisTemplate.opsForHash().put(JWKS_KEY, key.kid(), new PublishedJwk(key.jwk(), retainUntil));
+        synchronized (this) {
+            Map<String, VerificationKey> keys = new HashMap<>(verificationKeys);
+            keys.put(key.kid(), new VerificationKey(key.publicKey(), retainUntil));
+            verificationKeys = keys;
+        }
+        return key;
+    }
+
+    // One reload at a time; callers that waited on it find it done and use its result
+    private synchronized Map<String, VerificationKey> reloadVerificationKeys(String kid, long now) {
+        Map<String, VerificationKey> known = verificationKeys;
+        if (!isReloadDue(known.get(kid), now)) {
+            return known;
+        }
+        try {
+            Map<String, VerificationKey> keys = new HashMap<>();
+            redisTemplate.opsForHash().entries(JWKS_KEY).forEach((id, value) -> {
+                if (value instanceof PublishedJwk published && published.retainUntil() > now) {
+                    VerificationKey key = known.containsKey(id.toString()) ? known.get(id.toString()) : parse(published);
+                    if (key != null) {
+                        keys.put(id.toString(), key);
+                    }
+                }
+            });
+            verificationKeys = keys;
+        } catch (RuntimeException e) {
+            // Keep the keys we have; the next reload is still rate limited
+            log.error("Failed to load verification keys: {}", e.getMessage());
+        }
+        verificationKeysLoadedAt = now;
+        return verificationKeys;
+    }
+
+    private static VerificationKey parse(PublishedJwk published) {
+        try {
+            return new VerificationKey((PublicKey) Jwks.parser().build().parse(published.jwk()).toKey(),
+                    published.retainUntil());
+        } catch (RuntimeException e) {
+            log.error("Failed to parse verification key: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private JsonWebKeySet loadJwks() {
+        long now = System.currentTimeMillis();
+        // Sorted by kid so the body, and with it the ETag, only changes when the keys do
+        Map<String, String> keys = new TreeMap<>();
+        if (isAsymmetric()) {
+            redisTemplate.opsForHash().entries(JWKS_KEY).forEach((kid, value) -> {
+                if (value instanceof PublishedJwk published && published.retainUntil() > now) {
+                    keys.put(kid.toString(), published.jwk());
+                }
+            });
+        }
+
+        String json = "{\"keys\":[" + String.join(",", keys.values()) + "]}";
+        return new JsonWebKeySet(json, etag(json), now);
+    }
+
+    private static String etag(String json) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    record SigningKey(String kid, PrivateKey privateKey, PublicKey publicKey, SignatureAlgorithm algorithm, String jwk) {
+    }
+
+    private record VerificationKey(PublicKey publicKey, long retainUntil) {
+    }
+
+    /**
+     * A public JWK in the Redis key ring and the time until which it must stay published
+     */
+    public record PublishedJwk(String jwk, long retainUntil) {
+    }
+}
@@ -1,24 +1,44 @@
 package com.learnwithiftekhar.redissessionmanagement.security;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.learnwithiftekhar.redissessionmanagement.dto.TokenPair;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @Component
 @Slf4j
 public class JwtTokenProvider {
 
+    static final String TYPE_CLAIM = "type";
+    static final String ACCESS_TOKEN_TYPE = "access";
+    static final String REFRESH_TOKEN_TYPE = "refresh";
+    static final String AUTHORITIES_CLAIM = "authorities";
+    static final String EPOCH_CLAIM = "epoch";
+    static final String SESSION_CLAIM = "sid";
+
+    private static final ObjectMapper HEADER_READER = new ObjectMapper();
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
@@ -31,64 +51,153 @@ public class JwtTokenProvider {
     @Value("${jwt.refreshExpiration}")
     private long refreshTokenExpirationMS;
 
+    @Value("${jwt.authorities-in-token}")
+    private boolean authoritiesInToken;
+
+    @Value("${jwt.fast-codec}")
+    private boolean fastCodec;
+
+    private final JwtKeyRing keyRing;
+
+    // Key and parser are immutable and thread-safe, so they are built once
+    private SecretKey secretKey;
+    private JwtParser jwtParser;
+
+    // Issues and verifies HMAC tokens of our own claim shape without jjwt; null when disabled
+    private HmacJwtCodec hmacCodec;
+
+    public JwtTokenProvider(JwtKeyRing keyRing) {
+        this.keyRing = keyRing;
+    }
+
+    @PostConstruct
+    void init() {
+        secretKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        // Tokens with a kid are signed by the key ring, tokens without one by the shared secret,
+        // so HMAC tokens issued before switching to asymmetric signing stay valid until they expire
+        jwtParser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        String kid = header.getKeyId();
+                        return kid != null ? keyRing.verificationKey(kid) : secretKey;
+                    }
+                })
+                .build();
+        hmacCodec = fastCodec ? HmacJwtCodec.forKey(secretKey, jwtIssuer) : null;
+    }
 
-    public TokenPair generateTokenPair(Authentication authentication) {
-        String accessToken = generateAccessToken(authentication);
-        String refreshToken = generateRefreshToken(authentication);
-        return new TokenPair(accessToken, refreshToken, jwtExpirationMS, refreshTokenExpirationMS);
+    public TokenPair generateTokenPair(Authentication authentication, long epoch, String sessionId) {
+        String accessTokenId = UUID.randomUUID().toString();
+        String refreshTokenId = UUID.randomUUID().toString();
+        String accessToken = generateAccessToken(authentication, epoch, sessionId, accessTokenId);
+        String refreshToken = generateRefreshToken(authentication, epoch, sessionId, refreshTokenId);
+        return new TokenPair(accessToken, refreshToken, jwtExpirationMS, refreshTokenExpirationMS,
+                sessionId, accessTokenId, refreshTokenId);
     }
     // Generate JWT Token
-    public String generateAccessToken(Authentication authentication) {
+    public String generateAccessToken(Authentication authentication, long epoch, String sessionId, String tokenId) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpirationMS);
 
-        return generateToken(userPrincipal.getUsername(), jwtExpirationMS, null);
+        // Embedding the authorities lets the filter authenticate without loading the user
+        List<String> authorities = authoritiesInToken ? authorityNames(userPrincipal) : null;
+
+        return generateToken(userPrincipal.getUsername(), System.currentTimeMillis() + jwtExpirationMS, tokenId,
+                ACCESS_TOKEN_TYPE, epoch, sessionId, authorities);
     }
 
     // Generate Refresh Token
-    public String generateRefreshToken(Authentication authentication) {
+    public String generateRefreshToken(Authentication authentication, long epoch, String sessionId, String tokenId) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + refreshTokenExpirationMS);
 
-        Map<String, Object> claims = Map.of("type", "refresh");
+        return generateToken(userPrincipal.getUsername(), System.currentTimeMillis() + refreshTokenExpirationMS, tokenId,
+                REFRESH_TOKEN_TYPE, epoch, sessionId, null);
+    }
 
-       return generateToken(userPrincipal.getUsername(), refreshTokenExpirationMS, claims);
+    /**
+     * Latest expiry of an access token issued no later than the given time
+     */
+    public Instant accessTokenExpiry(long issuedAtMs) {
+        return Instant.ofEpochMilli(issuedAtMs + jwtExpirationMS);
     }
 
-    private String generateToken(String username, long expirationMs, Map<String, Object> claims) {
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + expirationMs);
+    /**
+     * Generate a refresh token that expires at the given time, so a rotated refresh token
+     * keeps the expiry of the session instead of extending it
+     */
+    public String generateRefreshToken(Authentication authentication, long epoch, String sessionId, String tokenId, Date expiryDate) {
+        UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
+
+       return generateToken(userPrincipal.getUsername(), expiryDate.getTime(), tokenId,
+               REFRESH_TOKEN_TYPE, epoch, sessionId, null);
+    }
+
+    private List<String> authorityNames(UserDetails userDetails) {
+        return userDetails.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+    }
+
+    private String generateToken(String username, long expiresAtMs, String tokenId,
+                                 String type, long epoch, String sessionId, List<String> authorities) {
+        long nowMs = System.currentTimeMillis();
+
+        // JWT times are whole seconds, as jjwt writes them
+        if (hmacCodec != null && !keyRing.isAsymmetric()) {
+            String token = hmacCodec.encode(tokenId, username, nowMs / 1000, expiresAtMs / 1000,
+                    sessionId, type, epoch, authorities);
+            if (token != null) {
+                return token;
+            }
+        }
+
+        Map<String, Object> claims = authorities != null
+                ? Map.of(TYPE_CLAIM, type, EPOCH_CLAIM, epoch, SESSION_CLAIM, sessionId, AUTHORITIES_CLAIM, authorities)
+                : Map.of(TYPE_CLAIM, type, EPOCH_CLAIM, epoch, SESSION_CLAIM, sessionId);
 
         JwtBuilder builder = Jwts.builder()
+                .id(tokenId)
                 .issuer(jwtIssuer)
                 .subject(username)
-                .issuedAt(now)
-                .expiration(expiryDate)
-                .signWith(getSecretKey());
+                .issuedAt(new Date(nowMs))
+                .expiration(new Date(expiresAtMs));
 
-        if(claims != null) {
-            builder.claims(claims);
+        if (keyRing.isAsymmetric()) {
+            JwtKeyRing.SigningKey signingKey = keyRing.currentSigningKey();
+            builder.header().keyId(signingKey.kid()).and()
+                    .signWith(signingKey.privateKey(), signingKey.algorithm());
+        } else {
+            builder.signWith(secretKey);
         }
 
-        return builder.compact();
-    }
+        builder.claims(claims);
 
-    // Extract username from token
-    public String getUsernameFromToken(String token) {
-        return getClaimsFromToken(token)
-                .getSubject();
+        return builder.compact();
     }
 
-    // Validate Token
-    public boolean validateToken(String token) {
+    /**
+     * Verify the token once and return its claims, or empty if it is not valid.
+     * Callers that need several claims should use this instead of
+     * {@link #validateToken} followed by {@link #getUsernameFromToken}.
+     */
+    public Optional<TokenClaims> verifyToken(String token) {
         try {
-            Jwts.parser()
-                    .verifyWith(getSecretKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            TokenClaims fastClaims = hmacCodec != null ? hmacCodec.decode(token, authoritiesInToken) : null;
+            if (fastClaims != null) {
+                return Optional.of(fastClaims);
+            }
+
+            Claims claims = getClaimsFromToken(token);
+            return Optional.of(new TokenClaims(
+                    claims.getSubject(),
+                    claims.get(TYPE_CLAIM, String.class),
+                    claims.getExpiration().toInstant(),
+                    claims.getIssuedAt().toInstant(),
+                    claims.getId(),
+                    claims.get(SESSION_CLAIM, String.class),
+                    getEpoch(claims),
+                    authoritiesInToken ? getAuthorities(claims) : null
+            ));
         } catch (SignatureException e) {
             log.error("Invalid JWT signature");
         } catch (MalformedJwtException e) {
@@ -99,19 +208,71 @@ public class JwtTokenProvider {
             log.error("JWT token is unsupported");
         } catch (IllegalArgumentException e) {
             log.error("JWT claims string is empty");
+        } catch (JwtException e) {
+            log.error("JWT token cannot be verified: {}", e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private long getEpoch(Claims claims) {
+        Number epoch = claims.get(EPOCH_CLAIM, Number.class);
+        return epoch != null ? epoch.longValue() : 0;
+    }
+
+    private List<String> getAuthorities(Claims claims) {
+        List<?> authorities = claims.get(AUTHORITIES_CLAIM, List.class);
+        if (authorities == null) {
+            return null;
         }
-        return false;
+        return authorities.stream()
+                .map(String::valueOf)
+                .toList();
+    }
+
+    // Extract username from token
+    public String getUsernameFromToken(String token) {
+        return getClaimsFromToken(token)
+                .getSubject();
+    }
+
+    // Validate Token
+    public boolean validateToken(String token) {
+        return verifyToken(token).isPresent();
     }
 
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSecretKey())
-                .build()
+        return jwtParser
                 .parseSignedClaims(token)
                 .getPayload();
     }
 
 
+    /**
+     * Whether verifying the token may read signing keys from Redis, because it names a kid
+     * the key ring cannot answer locally. Reactive callers verify such tokens off the event loop.
+     */
+    public boolean needsKeyLoad(String token) {
+        if (!keyRing.isAsymmetric()) {
+            return false;
+        }
+        String kid = keyId(token);
+        return kid != null && !keyRing.canVerifyLocally(kid);
+    }
+
+    // The kid of the token's header, or null when it has none or the header does not parse
+    private static String keyId(String token) {
+        int headerEnd = token.indexOf('.');
+        if (headerEnd <= 0) {
+            return null;
+        }
+        try {
+            JsonNode kid = HEADER_READER.readTree(Base64.getUrlDecoder().decode(token.substring(0, headerEnd))).get("kid");
+            return kid != null && kid.isTextual() ? kid.asText() : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public String extractTokenFromHeader(String bearerToken) {
         if (bearerToken !=null && bearerToken.startsWith("Bearer ")) {
             return bearerToken.substring(7);
@@ -120,7 +281,7 @@ public class JwtTokenProvider {
     }
 
     SecretKey getSecretKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        return secretKey;
     }
 
 }
@@ -0,0 +1,19 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the password hashing queue is full; the request should be retried after {@link #getRetryAfter()}.
+ */
+@Getter
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public PasswordHashingRejectedException(Duration retryAfter) {
+        super("Too many password hashing requests, retry later");
+        this.retryAfter = retryAfter;
+    }
+}
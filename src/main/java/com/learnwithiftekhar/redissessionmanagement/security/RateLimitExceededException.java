@@ -0,0 +1,19 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a client or username is over its request quota; the request may be retried after {@link #getRetryAfter()}.
+ */
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(Duration retryAfter) {
+        super("Too many requests, retry later");
+        this.retryAfter = retryAfter;
+    }
+}
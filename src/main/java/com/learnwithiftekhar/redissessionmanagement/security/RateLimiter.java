@@ -0,0 +1,251 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learnwithiftekhar.redissessionmanagement.repository.RedisKeyLayout;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttles the credential endpoints per client IP and per username with the generic cell rate
+ * algorithm: a quota of {@code limit} requests per {@code window} allows a burst of {@code limit},
+ * then one request every {@code window / limit}.
+ * Every node first runs the same algorithm on local state, which keeps only the requests the shared
+ * limiter let through. A key this node alone has pushed over its quota is then over the shared quota
+ * too, so floods are rejected without a Redis call; requests that pass locally are decided by
+ * {@code rate-limit.lua} for all nodes. With a local token store there is only one node and the local
+ * decision is final. When Redis fails, requests are let through rather than locking everyone out of login.
+ * On a Redis cluster the endpoint is the hash tag of its limiter keys, so the keys of one request share
+ * a slot and are still decided by one script call.
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    static final String KEY_PREFIX = "rate-limit:";
+
+    private static final RedisScript<Long> RATE_LIMIT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/rate-limit.lua"), Long.class);
+
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final boolean enabled;
+    private final boolean distributed;
+
+    private final Quota loginPerIp;
+    private final Quota loginPerUsername;
+    private final Quota refreshPerIp;
+
+    // Local theoretical arrival times by limiter key; an idle key is dropped once it would allow a full burst
+    private final Cache<String, AtomicLong> localArrivalTimes;
+
+    private final Endpoint login;
+    private final Endpoint refresh;
+
+    public RateLimiter(RedisTemplate<String, byte[]> tokenRedisTemplate,
+                       TokenStore tokenStore,
+                       RedisKeyLayout keyLayout,
+                       MeterRegistry meterRegistry,
+                       @Value("${rate-limit.enabled}") boolean enabled,
+                       @Value("${rate-limit.login.per-ip}") int loginPerIp,
+                       @Value("${rate-limit.login.per-username}") int loginPerUsername,
+                       @Value("${rate-limit.login.window}") long loginWindowMs,
+                       @Value("${rate-limit.refresh.per-ip}") int refreshPerIp,
+                       @Value("${rate-limit.refresh.window}") long refreshWindowMs,
+                       @Value("${rate-limit.local.max-size}") long localMaxSize) {
+        this.redisTemplate = tokenRedisTemplate;
+        this.enabled = enabled;
+        this.distributed = tokenStore.isRemote();
+        this.loginPerIp = Quota.of(loginPerIp, loginWindowMs);
+        this.loginPerUsername = Quota.of(loginPerUsername, loginWindowMs);
+        this.refreshPerIp = Quota.of(refreshPerIp, refreshWindowMs);
+        this.localArrivalTimes = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterAccess(Duration.ofMillis(Math.max(loginWindowMs, refreshWindowMs)))
+                .build();
+        this.login = Endpoint.register(meterRegistry, "login", keyLayout.isClustered());
+        this.refresh = Endpoint.register(meterRegistry, "refresh", keyLayout.isClustered());
+    }
+
+    /**
+     * @throws RateLimitExceededException when the client or the username is over its login quota
+     */
+    public void checkLogin(String clientIp, String username) {
+        check(login, List.of(
+                new Limit(loginPerIp, login.key("ip:" + clientIp)),
+                new Limit(loginPerUsername, login.key("user:" + username))));
+    }
+
+    /**
+     * @throws RateLimitExceededException when the client is over its refresh quota
+     */
+    public void checkRefresh(String clientIp) {
+        check(refresh, List.of(new Limit(refreshPerIp, refresh.key("ip:" + clientIp))));
+    }
+
+    private void check(Endpoint endpoint, List<Limit> limits) {
+        if (!enabled) {
+            return;
+        }
+        List<Limit> active = limits.stream()
+                .filter(limit -> limit.quota().isEnabled())
+                .toList();
+        if (active.isEmpty()) {
+            return;
+        }
+
+        List<Charge> charges = acquireLocally(endpoint, active, System.currentTimeMillis());
+        if (!distributed) {
+            endpoint.allowed().increment();
+            return;
+        }
+
+        Long result;
+        try {
+            result = redisTemplate.execute(RATE_LIMIT_SCRIPT, keys(active), args(active));
+        } catch (DataAccessException e) {
+            log.warn("Rate limit check for {} failed, allowing the request: {}", endpoint.name(), e.getMessage());
+            endpoint.error().increment();
+            return;
+        }
+        if (result != null && result > 0) {
+            // The shared quota took nothing for this request, so this node gives its share back too
+            charges.forEach(Charge::release);
+            reject(endpoint.rejected(), result);
+        }
+        endpoint.allowed().increment();
+    }
+
+    // Same algorithm as the script: take quota from every key, or from none when one of them is over
+    private List<Charge> acquireLocally(Endpoint endpoint, List<Limit> limits, long now) {
+        List<Charge> charges = new ArrayList<>(limits.size());
+        long retryAfterMs = 0;
+        for (Limit limit : limits) {
+            AtomicLong arrivalTime = localArrivalTimes.get(limit.key(), key -> new AtomicLong());
+            if (retryAfterMs > 0) {
+                // Already rejected; the remaining keys only count towards the wait
+                retryAfterMs = Math.max(retryAfterMs, limit.quota().waitMs(arrivalTime.get(), now));
+            } else if ((retryAfterMs = acquire(arrivalTime, limit.quota(), now)) == 0) {
+                charges.add(new Charge(arrivalTime, limit.quota().emissionIntervalMs()));
+            }
+        }
+        if (retryAfterMs > 0) {
+            charges.forEach(Charge::release);
+            reject(endpoint.rejectedLocal(), retryAfterMs);
+        }
+        return charges;
+    }
+
+    // Check and take in one compare-and-set, so concurrent requests cannot all pass on the same arrival time
+    private static long acquire(AtomicLong arrivalTime, Quota quota, long now) {
+        while (true) {
+            long tat = arrivalTime.get();
+            long waitMs = quota.waitMs(tat, now);
+            if (waitMs > 0) {
+                return waitMs;
+            }
+            if (arrivalTime.compareAndSet(tat, Math.max(tat, now) + quota.emissionIntervalMs())) {
+                return 0;
+            }
+        }
+    }
+
+    private static void reject(Counter decision, long retryAfterMs) {
+        decision.increment();
+        throw new RateLimitExceededException(Duration.ofMillis(retryAfterMs));
+    }
+
+    private static List<String> keys(List<Limit> limits) {
+        return limits.stream()
+                .map(Limit::key)
+                .toList();
+    }
+
+    private static Object[] args(List<Limit> limits) {
+        Object[] args = new Object[limits.size() * 2];
+        for (int i = 0; i < limits.size(); i++) {
+            args[2 * i] = bytes(limits.get(i).quota().emissionIntervalMs());
+            args[2 * i + 1] = bytes(limits.get(i).quota().toleranceMs());
+        }
+        return args;
+    }
+
+    private static byte[] bytes(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A limit of requests per window as GCRA parameters; a limit of 0 disables it
+     */
+    record Quota(long emissionIntervalMs, long toleranceMs) {
+
+        static Quota of(int limit, long windowMs) {
+            if (limit <= 0) {
+                return new Quota(0, 0);
+            }
+            long interval = Math.max(1, windowMs / limit);
+            return new Quota(interval, windowMs - interval);
+        }
+
+        boolean isEnabled() {
+            return emissionIntervalMs > 0;
+        }
+
+        // Milliseconds until a key at this arrival time allows another request, 0 if it does now
+        long waitMs(long arrivalTime, long now) {
+            return Math.max(0, Math.max(arrivalTime, now) - toleranceMs - now);
+        }
+    }
+
+    private record Limit(Quota quota, String key) {
+    }
+
+    // Quota taken locally for a request, given back when the shared limiter rejects it
+    private record Charge(AtomicLong arrivalTime, long emissionIntervalMs) {
+
+        void release() {
+            arrivalTime.addAndGet(-emissionIntervalMs);
+        }
+    }
+
+    /**
+     * A throttled endpoint: the prefix of its Redis keys and its decision counters, registered once
+     */
+    private record Endpoint(String name, String keyPrefix,
+                            Counter allowed, Counter rejectedLocal, Counter rejected, Counter error) {
+
+        static Endpoint register(MeterRegistry meterRegistry, String name, boolean clustered) {
+            return new Endpoint(name,
+                    KEY_PREFIX + (clustered ? "{" + name + "}:" : name + ":"),
+                    decisionCounter(meterRegistry, name, "allowed"),
+                    decisionCounter(meterRegistry, name, "rejected_local"),
+                    decisionCounter(meterRegistry, name, "rejected"),
+                    decisionCounter(meterRegistry, name, "error"));
+        }
+
+        String key(String limiter) {
+            return keyPrefix + limiter;
+        }
+
+        private static Counter decisionCounter(MeterRegistry meterRegistry, String endpoint, String outcome) {
+            return Counter.builder("rate.limit.decisions")
+                    .description("Rate limit decisions by endpoint and outcome")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+/**
+ * Authentication details of a JWT authenticated reactive request, carrying the device session the token belongs to.
+ */
+public record ReactiveSessionDetails(String sessionId) {
+}
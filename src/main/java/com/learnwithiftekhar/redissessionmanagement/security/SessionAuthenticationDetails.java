@@ -0,0 +1,19 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+/**
+ * Request details of a JWT authenticated request, carrying the device session the token belongs to.
+ */
+@Getter
+public class SessionAuthenticationDetails extends WebAuthenticationDetails {
+
+    private final String sessionId;
+
+    public SessionAuthenticationDetails(HttpServletRequest request, String sessionId) {
+        super(request);
+        this.sessionId = sessionId;
+    }
+}
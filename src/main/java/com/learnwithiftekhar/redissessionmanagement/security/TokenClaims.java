@@ -0,0 +1,24 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Immutable view of the claims of a token whose signature and expiry have been verified.
+ * {@code sessionId} identifies the device session the token belongs to and {@code epoch} is
+ * the user's revocation epoch at issue time (0 when the claim is absent).
+ * {@code authorities} is only set for access tokens issued with {@code jwt.authorities-in-token} enabled.
+ */
+public record TokenClaims(String subject,
+                          String type,
+                          Instant expiresAt,
+                          Instant issuedAt,
+                          String id,
+                          String sessionId,
+                          long epoch,
+                          List<String> authorities) {
+
+    public boolean isRefreshToken() {
+        return JwtTokenProvider.REFRESH_TOKEN_TYPE.equals(type);
+    }
+}
@@ -0,0 +1,78 @@
+package com.learnwithiftekhar.redissessionmanagement.service;
+
+import com.learnwithiftekhar.redissessionmanagement.dto.ActiveSessionPageResponse;
+import com.learnwithiftekhar.redissessionmanagement.dto.ActiveSessionResponse;
+import com.learnwithiftekhar.redissessionmanagement.dto.SessionResponse;
+import com.learnwithiftekhar.redissessionmanagement.dto.SessionStatsResponse;
+import com.learnwithiftekhar.redissessionmanagement.repository.ActiveSession;
+import com.learnwithiftekhar.redissessionmanagement.repository.ActiveSessionPage;
+import com.learnwithiftekhar.redissessionmanagement.repository.SessionCounts;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenStore;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Read-only view of live sessions across users for administrators, served from the token store's
+ * indexes rather than by scanning keys
+ */
+@Service
+@Profile("!reactive")
+public class ActiveSessionService {
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    private final TokenStore tokenStore;
+
+    public ActiveSessionService(TokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+
+    public SessionStatsResponse getStats() {
+        SessionCounts counts = tokenStore.countActiveSessions();
+        return new SessionStatsResponse(counts.activeUsers(), counts.activeSessions());
+    }
+
+    /**
+     * One page of live sessions in expiry order
+     *
+     * @throws IllegalArgumentException when the cursor is not one returned by a previous page
+     */
+    public ActiveSessionPageResponse listSessions(String cursor, int limit) {
+        ActiveSession after = cursor != null ? ActiveSession.fromCursor(cursor) : null;
+        ActiveSessionPage page = tokenStore.listActiveSessions(after, Math.clamp(limit, 1, MAX_PAGE_SIZE));
+        return new ActiveSessionPageResponse(
+                page.sessions().stream()
+                        .map(session -> new ActiveSessionResponse(
+                                session.username(),
+                                session.sessionId(),
+                                Instant.ofEpochMilli(session.expiresAt())))
+                        .toList(),
+                page.nextCursor()
+        );
+    }
+
+    public long countUserSessions(String username) {
+        return tokenStore.countSessions(username);
+    }
+
+    public List<SessionResponse> getUserSessions(String username) {
+        long now = System.currentTimeMillis();
+        return tokenStore.getSessions(username)
+                .sessions()
+                .entrySet()
+                .stream()
+                .filter(entry -> entry.getValue().refreshExpiresAt() > now)
+                .map(entry -> new SessionResponse(
+                        entry.getKey(),
+                        entry.getValue().device(),
+                        Instant.ofEpochMilli(entry.getValue().createdAt()),
+                        Instant.ofEpochMilli(entry.getValue().lastSeenAt()),
+                        Instant.ofEpochMilli(entry.getValue().refreshExpiresAt()),
+                        false
+                ))
+                .toList();
+    }
+}
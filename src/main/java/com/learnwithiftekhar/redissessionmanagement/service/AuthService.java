@@ -3,12 +3,22 @@ package com.learnwithiftekhar.redissessionmanagement.service;
 import com.learnwithiftekhar.redissessionmanagement.dto.AuthenticationResponse;
 import com.learnwithiftekhar.redissessionmanagement.dto.LoginRequest;
 import com.learnwithiftekhar.redissessionmanagement.dto.RegistrationRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.SessionResponse;
 import com.learnwithiftekhar.redissessionmanagement.dto.TokenPair;
 import com.learnwithiftekhar.redissessionmanagement.model.User;
-import com.learnwithiftekhar.redissessionmanagement.repository.TokenRepository;
+import com.learnwithiftekhar.redissessionmanagement.repository.RefreshRotation;
+import com.learnwithiftekhar.redissessionmanagement.repository.SessionRecord;
+import com.learnwithiftekhar.redissessionmanagement.repository.StaleEpochException;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenStore;
 import com.learnwithiftekhar.redissessionmanagement.repository.UserRepository;
 import com.learnwithiftekhar.redissessionmanagement.security.JwtTokenProvider;
-import org.springframework.beans.factory.annotation.Value;
+import com.learnwithiftekhar.redissessionmanagement.security.SessionAuthenticationDetails;
+import com.learnwithiftekhar.redissessionmanagement.security.TokenClaims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -20,39 +30,83 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
 @Service
+@Profile("!reactive")
 public class AuthService {
 
+    // Sign-in attempts while revocations keep moving the user's epoch on
+    private static final int MAX_SESSION_ATTEMPTS = 3;
+
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider jwtTokenProvider;
     private final UserDetailsService userDetailsService;
-    private final TokenRepository tokenRepository;
+    private final TokenStore tokenStore;
     private final PasswordEncoder passwordEncoder;
     private final UserRepository userRepository;
 
-    @Value("${jwt.expiration}")
-    private long jwtExpirationMS;
+    private final Timer registerTimer;
+    private final Timer loginTimer;
+    private final Timer refreshTimer;
+    private final Timer logoutTimer;
+    private final Timer logoutAllTimer;
 
-    @Value("${jwt.refreshExpiration}")
-    private long refreshTokenExpirationMS;
+    // Login: authentication (user load and BCrypt), token generation, session store
+    private final Timer loginAuthenticateTimer;
+    private final Timer loginGenerateTokensTimer;
+    private final Timer loginStoreSessionTimer;
 
+    // Refresh: token verification and blacklist check, user load, token generation, session rotation
+    private final Timer refreshVerifyTimer;
+    private final Timer refreshUserLoadTimer;
+    private final Timer refreshGenerateTokenTimer;
+    private final Timer refreshRotateSessionTimer;
 
-    public AuthService(AuthenticationManager authenticationManager, JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService, TokenRepository tokenRepository, PasswordEncoder passwordEncoder, UserRepository userRepository) {
+    public AuthService(AuthenticationManager authenticationManager, JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService, TokenStore tokenStore, PasswordEncoder passwordEncoder, UserRepository userRepository, MeterRegistry meterRegistry) {
         this.authenticationManager = authenticationManager;
         this.jwtTokenProvider = jwtTokenProvider;
         this.userDetailsService = userDetailsService;
-        this.tokenRepository = tokenRepository;
+        this.tokenStore = tokenStore;
         this.passwordEncoder = passwordEncoder;
         this.userRepository = userRepository;
+
+        this.registerTimer = operationTimer(meterRegistry, "register");
+        this.loginTimer = operationTimer(meterRegistry, "login");
+        this.refreshTimer = operationTimer(meterRegistry, "refresh");
+        this.logoutTimer = operationTimer(meterRegistry, "logout");
+        this.logoutAllTimer = operationTimer(meterRegistry, "logout_all");
+
+        this.loginAuthenticateTimer = stageTimer(meterRegistry, "login", "authenticate");
+        this.loginGenerateTokensTimer = stageTimer(meterRegistry, "login", "generate_tokens");
+        this.loginStoreSessionTimer = stageTimer(meterRegistry, "login", "store_session");
+        this.refreshVerifyTimer = stageTimer(meterRegistry, "refresh", "verify");
+        this.refreshUserLoadTimer = stageTimer(meterRegistry, "refresh", "user_load");
+        this.refreshGenerateTokenTimer = stageTimer(meterRegistry, "refresh", "generate_tokens");
+        this.refreshRotateSessionTimer = stageTimer(meterRegistry, "refresh", "rotate_session");
+    }
+
+    public AuthenticationResponse register(RegistrationRequest registraion, String device) {
+        long start = System.nanoTime();
+        try {
+            return doRegister(registraion, device);
+        } finally {
+            record(registerTimer, start);
+        }
     }
 
-    public AuthenticationResponse register(RegistrationRequest registraion) {
+    private AuthenticationResponse doRegister(RegistrationRequest registraion, String device) {
 
-        // First check if the user already exist
-        userRepository.findByUsername(registraion.getUsername())
-                .ifPresent(user -> {
-                    throw new RuntimeException("Username is already in use");
-                });
+        // First check if the user already exist, so a taken name costs no password hash
+        if (userRepository.existsByUsername(registraion.getUsername())) {
+            throw new RuntimeException("Username is already in use");
+        }
 
         // Create new user
         User user = new User();
@@ -60,108 +114,243 @@ public class AuthService {
         user.setPassword(passwordEncoder.encode(registraion.getPassword()));
         user.setRole(registraion.getRole());
 
-        userRepository.save(user);
+        // The unique constraint on username settles concurrent registrations of the same name
+        try {
+            userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new RuntimeException("Username is already in use");
+        }
 
-        return authenticateUser(registraion.getUsername(), registraion.getPassword());
+        return authenticateUser(registraion.getUsername(), registraion.getPassword(), device);
 
     }
 
-    public AuthenticationResponse login(LoginRequest loginRequest) {
-        return authenticateUser(loginRequest.getUsername(), loginRequest.getPassword());
+    public AuthenticationResponse login(LoginRequest loginRequest, String device) {
+        long start = System.nanoTime();
+        try {
+            return authenticateUser(loginRequest.getUsername(), loginRequest.getPassword(), device);
+        } finally {
+            record(loginTimer, start);
+        }
     }
 
-    private AuthenticationResponse authenticateUser(String username, String password) {
+    private AuthenticationResponse authenticateUser(String username, String password, String device) {
         // Authenticate the user
+        long start = System.nanoTime();
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         username,
                         password
                 )
         );
+        long authenticated = record(loginAuthenticateTimer, start);
 
         // Set authentication in security context
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        // Generate JWT token pair (access + refresh)
-        TokenPair tokenPair = jwtTokenProvider.generateTokenPair(authentication);
-
-        // Store token in Redis
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
 
-        tokenRepository.storeTokens(
-                userDetails.getUsername(),
-                tokenPair.getAccessToken(),
-                tokenPair.getRefreshToken(),
-                tokenPair.getAccessTokenExpirationMs(),
-                tokenPair.getRefreshTokenExpirationMs()
-        );
-
-        return new AuthenticationResponse(
-                tokenPair.getAccessToken(),
-                tokenPair.getRefreshToken(),
-                userDetails.getUsername(),
-                userDetails.getAuthorities()
-        );
+        // Generate JWT token pair (access + refresh) for a new device session,
+        // stamped with the user's revocation epoch. A revocation that lands before the
+        // session is stored moves the epoch on, so the session is signed again for the new one.
+        String sessionId = UUID.randomUUID().toString();
+        for (int attempt = 1; ; attempt++) {
+            long epoch = tokenStore.getEpoch(userDetails.getUsername());
+            TokenPair tokenPair = jwtTokenProvider.generateTokenPair(authentication, epoch, sessionId);
+            long generated = record(loginGenerateTokensTimer, authenticated);
+
+            // Store the session in Redis
+            long now = System.currentTimeMillis();
+            try {
+                tokenStore.createSession(
+                        userDetails.getUsername(),
+                        sessionId,
+                        new SessionRecord(
+                                tokenPair.getAccessTokenId(),
+                                tokenPair.getRefreshTokenId(),
+                                device,
+                                now,
+                                now,
+                                now + tokenPair.getRefreshTokenExpirationMs()
+                        ),
+                        epoch
+                );
+            } catch (StaleEpochException e) {
+                if (attempt == MAX_SESSION_ATTEMPTS) {
+                    throw e;
+                }
+                log.info("Sessions of {} were revoked during sign-in, signing the new session again", userDetails.getUsername());
+                authenticated = System.nanoTime();
+                continue;
+            }
+            record(loginStoreSessionTimer, generated);
+
+            return new AuthenticationResponse(
+                    tokenPair.getAccessToken(),
+                    tokenPair.getRefreshToken(),
+                    userDetails.getUsername(),
+                    userDetails.getAuthorities()
+            );
+        }
     }
 
     public void logout() {
+        long start = System.nanoTime();
         // Get Current authenticated User
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        var userDetails = (UserDetails) authentication.getPrincipal();
+
+        // Remove the session of the token used for this request
+        if (authentication.getDetails() instanceof SessionAuthenticationDetails details) {
+            endSession(userDetails.getUsername(), details.getSessionId());
+        } else {
+            tokenStore.removeAllTokens(userDetails.getUsername());
+        }
+        record(logoutTimer, start);
+    }
+
+    public void logoutAll() {
+        long start = System.nanoTime();
+        var userDetails = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+
+        // Revoke every session of this user
+        tokenStore.removeAllTokens(userDetails.getUsername());
+        record(logoutAllTimer, start);
+    }
+
+    public List<SessionResponse> getSessions() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        var userDetails = (UserDetails) authentication.getPrincipal();
+        String currentSessionId = authentication.getDetails() instanceof SessionAuthenticationDetails details
+                ? details.getSessionId()
+                : null;
+
+        return tokenStore.getSessions(userDetails.getUsername())
+                .sessions()
+                .entrySet()
+                .stream()
+                .filter(entry -> entry.getValue().refreshExpiresAt() > System.currentTimeMillis())
+                .map(entry -> new SessionResponse(
+                        entry.getKey(),
+                        entry.getValue().device(),
+                        Instant.ofEpochMilli(entry.getValue().createdAt()),
+                        Instant.ofEpochMilli(entry.getValue().lastSeenAt()),
+                        Instant.ofEpochMilli(entry.getValue().refreshExpiresAt()),
+                        entry.getKey().equals(currentSessionId)
+                ))
+                .toList();
+    }
+
+    public boolean revokeSession(String sessionId) {
         var userDetails = (UserDetails) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return endSession(userDetails.getUsername(), sessionId);
+    }
 
-        // Remove all tokens for this user
-        tokenRepository.removeAllTokens(userDetails.getUsername());
+    /**
+     * Remove one device session and blacklist its tokens until they expire, so a token replayed
+     * after logout is turned away by the blacklist instead of a session read on the primary
+     */
+    private boolean endSession(String username, String sessionId) {
+        SessionRecord session = tokenStore.getSessions(username).sessions().get(sessionId);
+        if (!tokenStore.removeSession(username, sessionId) || session == null) {
+            return false;
+        }
+        // The session's access token was issued by the time it was last seen
+        tokenStore.blacklistAccessToken(session.accessTokenId(), jwtTokenProvider.accessTokenExpiry(session.lastSeenAt()));
+        tokenStore.blacklistRefreshToken(session.refreshTokenId(), Instant.ofEpochMilli(session.refreshExpiresAt()));
+        return true;
     }
 
     public ResponseEntity<?> refreshToken(String refreshToken) {
+        long start = System.nanoTime();
+        try {
+            return doRefreshToken(refreshToken, start);
+        } finally {
+            record(refreshTimer, start);
+        }
+    }
+
+    private ResponseEntity<?> doRefreshToken(String refreshToken, long start) {
         // Validate the refresh token
-        if(!jwtTokenProvider.validateToken(refreshToken)) {
+        Optional<TokenClaims> claims = jwtTokenProvider.verifyToken(refreshToken);
+        if(claims.isEmpty() || !claims.get().isRefreshToken()) {
+            record(refreshVerifyTimer, start);
             return ResponseEntity.badRequest()
                     .body("Invalid refresh token");
         }
 
-        // Check if token is blacklisted
-        if(tokenRepository.isRefreshTokenBlacklisted(refreshToken)) {
+        // Check if token is blacklisted, i.e. its session was logged out
+        if(tokenStore.isRefreshTokenBlacklisted(claims.get().id())) {
+            record(refreshVerifyTimer, start);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body("ERROR: Refresh token is blacklisted");
         }
+        long verified = record(refreshVerifyTimer, start);
 
 
         // Extract the username from refresh token
-        String username = jwtTokenProvider.getUsernameFromToken(refreshToken);
-
-
-        // Verify token matches stored token for user
-        String storedRefreshToken = tokenRepository.getRefreshToken(username);
-
-        if(storedRefreshToken == null || !storedRefreshToken.equals(refreshToken)) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body("ERROR: Invalid refresh token");
-        }
+        TokenClaims refreshClaims = claims.get();
+        String username = refreshClaims.subject();
 
         UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        long loaded = record(refreshUserLoadTimer, verified);
 
         // Create new authentication object
         UsernamePasswordAuthenticationToken authToken =
                 new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
 
 
-        String newAccessToken = jwtTokenProvider.generateAccessToken(authToken);
+        // Issue the next token pair up front; the new refresh token keeps the session's expiry
+        String newAccessTokenId = UUID.randomUUID().toString();
+        String newRefreshTokenId = UUID.randomUUID().toString();
+        String newAccessToken = jwtTokenProvider.generateAccessToken(
+                authToken, refreshClaims.epoch(), refreshClaims.sessionId(), newAccessTokenId);
+        String newRefreshToken = jwtTokenProvider.generateRefreshToken(
+                authToken, refreshClaims.epoch(), refreshClaims.sessionId(), newRefreshTokenId,
+                Date.from(refreshClaims.expiresAt()));
+        long generated = record(refreshGenerateTokenTimer, loaded);
+
+        // Swap them in only if the presented token is still the session's current one
+        RefreshRotation rotation = tokenStore.rotateRefreshToken(username, refreshClaims.sessionId(),
+                refreshClaims.epoch(), refreshClaims.id(), newAccessTokenId, newRefreshTokenId);
+        record(refreshRotateSessionTimer, generated);
+
+        return switch (rotation) {
+            case ROTATED -> ResponseEntity.ok(new AuthenticationResponse(
+                    newAccessToken,
+                    newRefreshToken,
+                    username,
+                    userDetails.getAuthorities()
+            ));
+            case INVALID -> ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body("ERROR: Invalid refresh token");
+            case REUSED -> {
+                log.warn("Refresh token reuse detected for user {}, session {} revoked", username, refreshClaims.sessionId());
+                yield ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .body("ERROR: Refresh token has already been used, session revoked");
+            }
+        };
+    }
+
+    // Records the time since start and returns the current time as the start of the next stage
+    private static long record(Timer timer, long start) {
+        long now = System.nanoTime();
+        timer.record(now - start, TimeUnit.NANOSECONDS);
+        return now;
+    }
 
-        // Update access token in Redis
-        tokenRepository.removeAccessToken(username);
-        tokenRepository.storeTokens(
-                username,
-                newAccessToken,
-                refreshToken,
-                jwtExpirationMS,
-                refreshTokenExpirationMS
-        );
+    private static Timer operationTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("auth.operation")
+                .description("Latency of authentication operations")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
 
-        return ResponseEntity.ok(new AuthenticationResponse(
-                newAccessToken,
-                refreshToken,
-                username,
-                userDetails.getAuthorities()
-        ));
+    private static Timer stageTimer(MeterRegistry meterRegistry, String operation, String stage) {
+        return Timer.builder("auth.operation.stage")
+                .description("Time spent in each stage of an authentication operation")
+                .tag("operation", operation)
+                .tag("stage", stage)
+                .register(meterRegistry);
     }
 }
@@ -1,7 +1,20 @@
 package com.learnwithiftekhar.redissessionmanagement.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learnwithiftekhar.redissessionmanagement.model.Role;
 import com.learnwithiftekhar.redissessionmanagement.model.User;
 import com.learnwithiftekhar.redissessionmanagement.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -9,36 +22,103 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 
+@Slf4j
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, MessageListener {
+
+    // Channel on which a username is published whenever the stored user changes
+    public static final String USER_INVALIDATION_CHANNEL = "user:invalidate";
 
     private final UserRepository userRepository;
+    private final RedisSerializer<?> messageSerializer;
+    private final Cache<String, CachedUser> cache;
+    private final boolean cacheEnabled;
+
+    // Concurrent misses for one user, e.g. a burst of refreshes when an app resumes, share one query.
+    // Unlike the cache this also covers unknown usernames, which are never cached.
+    private final SingleFlight<String, CachedUser> userLoads;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository,
+                                    RedisTemplate<String, Object> redisTemplate,
+                                    RedisMessageListenerContainer listenerContainer,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${user-details.cache.enabled}") boolean cacheEnabled,
+                                    @Value("${user-details.cache.max-size}") long maxSize,
+                                    @Value("${user-details.cache.ttl}") long ttlMs) {
         this.userRepository = userRepository;
+        this.messageSerializer = redisTemplate.getValueSerializer();
+        this.cacheEnabled = cacheEnabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        this.userLoads = new SingleFlight<>(userLoadCounter(meterRegistry, "query"), userLoadCounter(meterRegistry, "collapsed"));
+
+        if (cacheEnabled) {
+            listenerContainer.addMessageListener(this, new ChannelTopic(USER_INVALIDATION_CHANNEL));
+        }
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException(username));
+        CachedUser user = cacheEnabled ? cache.getIfPresent(username) : null;
+        if (user == null) {
+            // The cache still loads the entry, so an invalidation during the query is not lost
+            user = userLoads.load(username, key -> cacheEnabled ? cache.get(key, this::findUser) : findUser(key));
+        }
+
+        if (user == null) {
+            throw new UsernameNotFoundException(username);
+        }
+        return user.toUserDetails();
+    }
 
+    private CachedUser findUser(String username) {
+        return userRepository.findByUsername(username)
+                .map(user -> new CachedUser(user.getUsername(), user.getPassword(), user.getRole()))
+                .orElse(null);
+    }
 
-        return new org.springframework.security.core.userdetails.User(
-                user.getUsername(),
-                user.getPassword(),
-                getAuthorities(user)
-        );
+    private static Counter userLoadCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("user.details.loads")
+                .description("User loads that missed the cache: queries run, or calls that waited for one in flight")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
-    private Collection<? extends GrantedAuthority> getAuthorities(User user) {
+    private static Collection<? extends GrantedAuthority> getAuthorities(Role role) {
         var authorities = new ArrayList<GrantedAuthority>();
-        authorities.add(new SimpleGrantedAuthority(user.getRole().name()));
+        authorities.add(new SimpleGrantedAuthority(role.name()));
         return authorities;
     }
 
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object username = messageSerializer.deserialize(message.getBody());
+        if (username != null) {
+            cache.invalidate(username.toString());
+        } else {
+            log.warn("Received empty user invalidation message");
+        }
+    }
 
+    /**
+     * Immutable snapshot of the fields of {@link User} that UserDetails is built from.
+     * A fresh UserDetails is created per call because Spring Security erases the
+     * credentials of the instance it authenticates.
+     */
+    private record CachedUser(String username, String password, Role role) {
+
+        UserDetails toUserDetails() {
+            return new org.springframework.security.core.userdetails.User(
+                    username,
+                    password,
+                    getAuthorities(role)
+            );
+        }
+    }
 }
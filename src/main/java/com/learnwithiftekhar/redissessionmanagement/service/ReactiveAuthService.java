@@ -0,0 +1,218 @@
+package com.learnwithiftekhar.redissessionmanagement.service;
+
+import com.learnwithiftekhar.redissessionmanagement.dto.AuthenticationResponse;
+import com.learnwithiftekhar.redissessionmanagement.dto.LoginRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.RegistrationRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.TokenPair;
+import com.learnwithiftekhar.redissessionmanagement.model.User;
+import com.learnwithiftekhar.redissessionmanagement.repository.ReactiveTokenRepository;
+import com.learnwithiftekhar.redissessionmanagement.repository.SessionRecord;
+import com.learnwithiftekhar.redissessionmanagement.repository.StaleEpochException;
+import com.learnwithiftekhar.redissessionmanagement.repository.UserRepository;
+import com.learnwithiftekhar.redissessionmanagement.security.JwtTokenProvider;
+import com.learnwithiftekhar.redissessionmanagement.security.ReactiveSessionDetails;
+import com.learnwithiftekhar.redissessionmanagement.security.TokenClaims;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Non-blocking counterpart of {@link AuthService} for the reactive profile. Redis is accessed
+ * through {@link ReactiveTokenRepository}; JPA calls and password hashing are moved to the
+ * bounded elastic scheduler.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveAuthService {
+
+    // Sign-in attempts while revocations keep moving the user's epoch on, as in AuthService
+    private static final int MAX_SESSION_ATTEMPTS = 3;
+
+    private final ReactiveAuthenticationManager authenticationManager;
+    private final JwtTokenProvider jwtTokenProvider;
+    private final UserDetailsService userDetailsService;
+    private final ReactiveTokenRepository tokenRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final UserRepository userRepository;
+
+    public ReactiveAuthService(ReactiveAuthenticationManager authenticationManager, JwtTokenProvider jwtTokenProvider, UserDetailsService userDetailsService, ReactiveTokenRepository tokenRepository, PasswordEncoder passwordEncoder, UserRepository userRepository) {
+        this.authenticationManager = authenticationManager;
+        this.jwtTokenProvider = jwtTokenProvider;
+        this.userDetailsService = userDetailsService;
+        this.tokenRepository = tokenRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.userRepository = userRepository;
+    }
+
+    public Mono<AuthenticationResponse> register(RegistrationRequest registration, String device) {
+        return Mono.fromCallable(() -> {
+                    // First check if the user already exist, so a taken name costs no password hash
+                    if (userRepository.existsByUsername(registration.getUsername())) {
+                        throw new RuntimeException("Username is already in use");
+                    }
+
+                    // Create new user
+                    User user = new User();
+                    user.setUsername(registration.getUsername());
+                    user.setPassword(passwordEncoder.encode(registration.getPassword()));
+                    user.setRole(registration.getRole());
+
+                    // The unique constraint on username settles concurrent registrations of the same name
+                    try {
+                        return userRepository.saveAndFlush(user);
+                    } catch (DataIntegrityViolationException e) {
+                        throw new RuntimeException("Username is already in use");
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.defer(() -> authenticateUser(registration.getUsername(), registration.getPassword(), device)));
+    }
+
+    public Mono<AuthenticationResponse> login(LoginRequest loginRequest, String device) {
+        return authenticateUser(loginRequest.getUsername(), loginRequest.getPassword(), device);
+    }
+
+    private Mono<AuthenticationResponse> authenticateUser(String username, String password, String device) {
+        return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password))
+                .flatMap(authentication -> {
+                    UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+                    String sessionId = UUID.randomUUID().toString();
+
+                    // Generate JWT token pair for a new device session, stamped with the user's revocation epoch;
+                    // a revocation that lands before the session is stored moves the epoch on, so it is signed again
+                    return tokenRepository.getEpoch(userDetails.getUsername())
+                            .flatMap(epoch -> {
+                                TokenPair tokenPair = jwtTokenProvider.generateTokenPair(authentication, epoch, sessionId);
+                                long now = System.currentTimeMillis();
+                                SessionRecord session = new SessionRecord(
+                                        tokenPair.getAccessTokenId(),
+                                        tokenPair.getRefreshTokenId(),
+                                        device,
+                                        now,
+                                        now,
+                                        now + tokenPair.getRefreshTokenExpirationMs()
+                                );
+                                return tokenRepository.createSession(userDetails.getUsername(), sessionId, session, epoch)
+                                        .thenReturn(toResponse(tokenPair, userDetails));
+                            })
+                            .retryWhen(Retry.max(MAX_SESSION_ATTEMPTS - 1)
+                                    .filter(StaleEpochException.class::isInstance)
+                                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+                });
+    }
+
+    public Mono<Void> logout() {
+        return currentAuthentication().flatMap(authentication -> {
+            String username = ((UserDetails) authentication.getPrincipal()).getUsername();
+
+            // Remove the session of the token used for this request
+            if (authentication.getDetails() instanceof ReactiveSessionDetails details) {
+                return endSession(username, details.sessionId());
+            }
+            return tokenRepository.removeAllTokens(username);
+        });
+    }
+
+    public Mono<Void> logoutAll() {
+        // Revoke every session of this user
+        return currentAuthentication().flatMap(authentication ->
+                tokenRepository.removeAllTokens(((UserDetails) authentication.getPrincipal()).getUsername()));
+    }
+
+    public Mono<ResponseEntity<?>> refreshToken(String refreshToken) {
+        // Validate the refresh token
+        TokenClaims refreshClaims = jwtTokenProvider.verifyToken(refreshToken).orElse(null);
+        if (refreshClaims == null || !refreshClaims.isRefreshToken()) {
+            return Mono.just(ResponseEntity.badRequest().body("Invalid refresh token"));
+        }
+
+        String username = refreshClaims.subject();
+        String sessionId = refreshClaims.sessionId();
+
+        return tokenRepository.isRefreshTokenBlacklisted(refreshClaims.id()).flatMap(blacklisted -> {
+            if (blacklisted) {
+                return Mono.just(unauthorized("ERROR: Refresh token is blacklisted"));
+            }
+
+            return Mono.fromCallable(() -> userDetailsService.loadUserByUsername(username))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMap(userDetails -> {
+                        UsernamePasswordAuthenticationToken authToken =
+                                new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+
+                        // Issue the next token pair up front; the new refresh token keeps the session's expiry
+                        String newAccessTokenId = UUID.randomUUID().toString();
+                        String newRefreshTokenId = UUID.randomUUID().toString();
+                        String newAccessToken = jwtTokenProvider.generateAccessToken(
+                                authToken, refreshClaims.epoch(), sessionId, newAccessTokenId);
+                        String newRefreshToken = jwtTokenProvider.generateRefreshToken(
+                                authToken, refreshClaims.epoch(), sessionId, newRefreshTokenId,
+                                Date.from(refreshClaims.expiresAt()));
+
+                        // Swap them in only if the presented token is still the session's current one
+                        return tokenRepository.rotateRefreshToken(username, sessionId, refreshClaims.epoch(),
+                                        refreshClaims.id(), newAccessTokenId, newRefreshTokenId)
+                                .map(rotation -> switch (rotation) {
+                                    case ROTATED -> ResponseEntity.ok(new AuthenticationResponse(
+                                            newAccessToken, newRefreshToken, username, userDetails.getAuthorities()));
+                                    case INVALID -> unauthorized("ERROR: Invalid refresh token");
+                                    case REUSED -> unauthorized("ERROR: Refresh token has already been used, session revoked");
+                                });
+                    });
+        });
+    }
+
+    /**
+     * Remove one device session and blacklist its tokens until they expire
+     *
+     * @see AuthService
+     */
+    private Mono<Void> endSession(String username, String sessionId) {
+        return tokenRepository.getSessions(username)
+                .flatMap(sessions -> tokenRepository.removeSession(username, sessionId)
+                        .flatMap(removed -> {
+                            SessionRecord session = sessions.sessions().get(sessionId);
+                            if (!removed || session == null) {
+                                return Mono.empty();
+                            }
+                            return tokenRepository.blacklistAccessToken(session.accessTokenId(),
+                                            jwtTokenProvider.accessTokenExpiry(session.lastSeenAt()))
+                                    .then(tokenRepository.blacklistRefreshToken(session.refreshTokenId(),
+                                            Instant.ofEpochMilli(session.refreshExpiresAt())));
+                        }));
+    }
+
+    private static Mono<Authentication> currentAuthentication() {
+        return ReactiveSecurityContextHolder.getContext().map(SecurityContext::getAuthentication);
+    }
+
+    private static ResponseEntity<?> unauthorized(String message) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(message);
+    }
+
+    private static AuthenticationResponse toResponse(TokenPair tokenPair, UserDetails userDetails) {
+        return new AuthenticationResponse(
+                tokenPair.getAccessToken(),
+                tokenPair.getRefreshToken(),
+                userDetails.getUsername(),
+                userDetails.getAuthorities()
+        );
+    }
+}
@@ -0,0 +1,163 @@
+package com.learnwithiftekhar.redissessionmanagement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.learnwithiftekhar.redissessionmanagement.dto.RevocationJobResponse;
+import com.learnwithiftekhar.redissessionmanagement.model.Role;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenStore;
+import com.learnwithiftekhar.redissessionmanagement.repository.UserRepository;
+import com.learnwithiftekhar.redissessionmanagement.repository.UserRepository.UserKey;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Revokes the sessions of many users at once, e.g. every user of a role during incident response.
+ * Jobs run one at a time on a background thread: users are read in keyset pages of
+ * {@code admin.revocation.batch-size} and each page is revoked with one pipelined round trip,
+ * with {@code admin.revocation.batch-pause} between pages so other clients keep their share of Redis.
+ * Progress is kept in memory on the node that runs the job.
+ * Usernames without an account are skipped, so no revocation state is written for them.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class SessionRevocationService {
+
+    private final UserRepository userRepository;
+    private final TokenStore tokenStore;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final ExecutorService executor;
+
+    // Recent jobs for progress reporting; old finished jobs are simply forgotten
+    private final Cache<String, RevocationJob> jobs = Caffeine.newBuilder()
+            .maximumSize(100)
+            .build();
+
+    public SessionRevocationService(UserRepository userRepository,
+                                    TokenStore tokenStore,
+                                    @Value("${admin.revocation.batch-size}") int batchSize,
+                                    @Value("${admin.revocation.batch-pause}") long batchPauseMs) {
+        this.userRepository = userRepository;
+        this.tokenStore = tokenStore;
+        this.batchSize = batchSize;
+        this.batchPauseMs = batchPauseMs;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-revocation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue revocation of every user with the given role
+     */
+    public RevocationJobResponse revokeRole(Role role) {
+        return submit(new RevocationJob(userRepository.countByRole(role)), job -> revokePages(job, role));
+    }
+
+    /**
+     * Queue revocation of the given users
+     */
+    public RevocationJobResponse revokeUsers(List<String> usernames) {
+        List<String> distinct = usernames.stream().distinct().toList();
+        return submit(new RevocationJob(distinct.size()), job -> {
+            for (int from = 0; from < distinct.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+                List<UserKey> existing = userRepository.findByUsernameIn(
+                        distinct.subList(from, Math.min(from + batchSize, distinct.size())));
+                revokeBatch(job, existing.stream().map(UserKey::username).toList());
+            }
+        });
+    }
+
+    public Optional<RevocationJobResponse> getJob(String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId)).map(RevocationJob::toResponse);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private RevocationJobResponse submit(RevocationJob job, JobBody body) {
+        jobs.put(job.id, job);
+        executor.execute(() -> {
+            job.startedAt = Instant.now();
+            job.status = "RUNNING";
+            try {
+                body.run(job);
+                job.status = "COMPLETED";
+                log.info("Revocation job {} revoked the sessions of {} users", job.id, job.revokedUsers.get());
+            } catch (Exception e) {
+                job.status = "FAILED";
+                job.error = e.getMessage();
+                log.error("Revocation job {} failed after {} users", job.id, job.revokedUsers.get(), e);
+            } finally {
+                job.finishedAt = Instant.now();
+            }
+        });
+        return job.toResponse();
+    }
+
+    private void revokePages(RevocationJob job, Role role) throws InterruptedException {
+        long lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<UserKey> page = role != null
+                    ? userRepository.findByRoleAndIdGreaterThanOrderByIdAsc(role, lastId, Limit.of(batchSize))
+                    : userRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(batchSize));
+            if (page.isEmpty()) {
+                return;
+            }
+            revokeBatch(job, page.stream().map(UserKey::username).toList());
+            lastId = page.getLast().id();
+        }
+    }
+
+    private void revokeBatch(RevocationJob job, List<String> usernames) throws InterruptedException {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        tokenStore.removeAllTokens(usernames);
+        job.revokedUsers.addAndGet(usernames.size());
+        if (batchPauseMs > 0) {
+            Thread.sleep(batchPauseMs);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JobBody {
+        void run(RevocationJob job) throws InterruptedException;
+    }
+
+    private static final class RevocationJob {
+        private final String id = UUID.randomUUID().toString();
+        private final Instant submittedAt = Instant.now();
+        private final long totalUsers;
+        private final AtomicLong revokedUsers = new AtomicLong();
+        private volatile String status = "QUEUED";
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private RevocationJob(long totalUsers) {
+            this.totalUsers = totalUsers;
+        }
+
+        private RevocationJobResponse toResponse() {
+            return new RevocationJobResponse(id, status, totalUsers, revokedUsers.get(),
+                    submittedAt, startedAt, finishedAt, error);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.learnwithiftekhar.redissessionmanagement.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learnwithiftekhar.redissessionmanagement.dto.RegistrationRequest;
+import com.learnwithiftekhar.redissessionmanagement.dto.UserImportResponse;
+import com.learnwithiftekhar.redissessionmanagement.model.Role;
+import com.learnwithiftekhar.redissessionmanagement.model.User;
+import com.learnwithiftekhar.redissessionmanagement.security.PasswordHashingRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates users in bulk from newline-delimited JSON, one {@link RegistrationRequest} per line, e.g. when
+ * onboarding a tenant. The stream is read in chunks of {@code admin.import.batch-size}: the passwords of a
+ * chunk are hashed on {@code admin.import.hashing-threads} threads, which still queue on the shared password
+ * hashing pool so logins keep their share of the CPU, and the chunk is written with one batched insert.
+ * Existing usernames are skipped by the unique constraint rather than looked up first, so an interrupted
+ * import can simply be sent again. No tokens are issued for imported users.
+ */
+@Slf4j
+@Service
+@Profile("!reactive")
+public class UserImportService {
+
+    // The sequence steps by the allocation size, so a value taken per row never falls in a block Hibernate reserved
+    private static final String INSERT_SQL = "INSERT INTO users (id, username, password, role) VALUES (nextval('"
+            + User.ID_SEQUENCE + "'), ?, ?, ?) ON CONFLICT (username) DO NOTHING";
+    private static final int MAX_USERNAME_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final ExecutorService hashingExecutor;
+
+    private final Counter importedUsers;
+    private final Counter duplicateUsers;
+    private final Counter invalidUsers;
+
+    public UserImportService(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             PasswordEncoder passwordEncoder,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${admin.import.batch-size}") int batchSize,
+                             @Value("${admin.import.hashing-threads}") int hashingThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.passwordEncoder = passwordEncoder;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.hashingExecutor = Executors.newFixedThreadPool(
+                hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "user-import-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.importedUsers = importCounter(meterRegistry, "imported");
+        this.duplicateUsers = importCounter(meterRegistry, "duplicate");
+        this.invalidUsers = importCounter(meterRegistry, "invalid");
+    }
+
+    /**
+     * Import every user in the stream, committing each chunk as it is written
+     *
+     * @throws IllegalArgumentException when a line is not a JSON object; chunks before it stay imported
+     */
+    public UserImportResponse importUsers(InputStream ndjson) throws IOException {
+        UserImportResponse result = new UserImportResponse(0, 0, 0);
+        List<RegistrationRequest> chunk = new ArrayList<>(batchSize);
+
+        try (MappingIterator<JsonNode> records = objectMapper.readerFor(JsonNode.class).readValues(ndjson)) {
+            JsonNode record;
+            while ((record = nextRecord(records, result)) != null) {
+                chunk.add(toRequest(record));
+                if (chunk.size() == batchSize) {
+                    importChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+        }
+        importChunk(chunk, result);
+
+        log.info("Imported {} users, skipped {} existing and {} invalid",
+                result.getImported(), result.getDuplicates(), result.getInvalid());
+        return result;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+
+    private JsonNode nextRecord(MappingIterator<JsonNode> records, UserImportResponse result) {
+        try {
+            return records.hasNextValue() ? records.nextValue() : null;
+        } catch (IOException e) {
+            // The stream cannot be resynchronised after malformed JSON, so stop here
+            throw new IllegalArgumentException("Malformed user at line " + records.getCurrentLocation().getLineNr()
+                    + " after importing " + result.getImported() + " users", e);
+        }
+    }
+
+    // A line with an unknown role or the wrong shape is counted as invalid, the rest of the stream still imports
+    private RegistrationRequest toRequest(JsonNode record) {
+        try {
+            return objectMapper.treeToValue(record, RegistrationRequest.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void importChunk(List<RegistrationRequest> chunk, UserImportResponse result) {
+        // Hash each new username once; repeats within the chunk would only conflict on insert
+        Set<String> usernames = new HashSet<>();
+        List<RegistrationRequest> valid = new ArrayList<>(chunk.size());
+        for (RegistrationRequest request : chunk) {
+            if (!isValid(request)) {
+                result.setInvalid(result.getInvalid() + 1);
+                invalidUsers.increment();
+            } else if (!usernames.add(request.getUsername())) {
+                result.setDuplicates(result.getDuplicates() + 1);
+                duplicateUsers.increment();
+            } else {
+                valid.add(request);
+            }
+        }
+
+        List<Object[]> rows = hashPasswords(valid, result);
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+
+        // DO NOTHING reports 0 rows for a username that already exists
+        long duplicates = 0;
+        for (int count : counts) {
+            duplicates += count == 0 ? 1 : 0;
+        }
+        result.setImported(result.getImported() + rows.size() - duplicates);
+        result.setDuplicates(result.getDuplicates() + duplicates);
+        importedUsers.increment(rows.size() - duplicates);
+        duplicateUsers.increment(duplicates);
+    }
+
+    private List<Object[]> hashPasswords(List<RegistrationRequest> requests, UserImportResponse result) {
+        List<Future<String>> hashes = new ArrayList<>(requests.size());
+        for (RegistrationRequest request : requests) {
+            hashes.add(hashingExecutor.submit(() -> encode(request.getPassword())));
+        }
+
+        List<Object[]> rows = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            RegistrationRequest request = requests.get(i);
+            try {
+                Role role = request.getRole() != null ? request.getRole() : Role.USER;
+                rows.add(new Object[]{request.getUsername(), hashes.get(i).get(), role.name()});
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IllegalArgumentException)) {
+                    throw new IllegalStateException("Password hashing failed", e.getCause());
+                }
+                // e.g. a password longer than BCrypt accepts
+                result.setInvalid(result.getInvalid() + 1);
+                invalidUsers.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                hashes.forEach(hash -> hash.cancel(true));
+                throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+            }
+        }
+        return rows;
+    }
+
+    // An import is not worth failing over a login burst filling the hashing queue, so wait it out
+    private String encode(String password) throws InterruptedException {
+        while (true) {
+            try {
+                return passwordEncoder.encode(password);
+            } catch (PasswordHashingRejectedException e) {
+                Thread.sleep(e.getRetryAfter().toMillis());
+            }
+        }
+    }
+
+    private static boolean isValid(RegistrationRequest request) {
+        return request != null
+                && request.getUsername() != null && !request.getUsername().isBlank()
+                && request.getUsername().length() <= MAX_USERNAME_LENGTH
+                && request.getPassword() != null && !request.getPassword().isEmpty();
+    }
+
+    private static Counter importCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("user.import.users")
+                .description("Users read by bulk imports, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
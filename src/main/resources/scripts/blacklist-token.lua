@@ -0,0 +1,7 @@
+-- Writes a blacklist entry and announces it to the other nodes.
+-- KEYS[1]: blacklist key
+-- ARGV[1]: TTL in milliseconds (the token's remaining life)
+-- ARGV[2]: blacklist channel
+redis.call('SET', KEYS[1], '', 'PX', ARGV[1])
+redis.call('PUBLISH', ARGV[2], cjson.encode(KEYS[1]))
+return 1
@@ -0,0 +1,90 @@
+-- Adds a device session for a user, enforcing the per-user session limit. Like rotation, it only
+-- succeeds in the epoch the session's tokens are stamped with, so a revocation that lands between
+-- reading the epoch and storing the session cannot leave a session that is dead on arrival.
+-- KEYS[1]: sessions hash (session id -> session record)
+-- KEYS[2]: session expiry sorted set (session id scored by refresh token expiry, epoch ms)
+-- KEYS[3]: user epoch key
+-- KEYS[4]: active session index (session id:username scored by refresh token expiry)
+-- KEYS[5]: active user index (username scored by the expiry of the user's latest session)
+-- ARGV[1]: session id
+-- ARGV[2]: encoded session record
+-- ARGV[3]: refresh token expiry, epoch ms
+-- ARGV[4]: current time, epoch ms
+-- ARGV[5]: maximum sessions per user
+-- ARGV[6]: eviction policy, 'evict-oldest' or 'reject-new'
+-- ARGV[7]: token invalidation channel
+-- ARGV[8]: username, published on the token invalidation channel
+-- ARGV[9]: maximum number of expired index entries to drop
+-- ARGV[10]: epoch of the session's tokens
+-- Returns the number of evicted sessions, -1 when the session was rejected, or -2 when the epoch has moved on.
+-- On a cluster the index keys are left out, as they live in another slot, and the script returns
+-- {result, latest session expiry, removed session ids...} for update-session-index.lua instead.
+local indexed = #KEYS == 5
+local removed = {}
+
+if tonumber(redis.call('GET', KEYS[3]) or '0') ~= tonumber(ARGV[10]) then
+    return indexed and -2 or {-2, -1}
+end
+
+local function unindex(sessionIds)
+    if indexed then
+        local members = {}
+        for i, sessionId in ipairs(sessionIds) do
+            members[i] = sessionId .. ':' .. ARGV[8]
+        end
+        redis.call('ZREM', KEYS[4], unpack(members))
+    else
+        for _, sessionId in ipairs(sessionIds) do
+            removed[#removed + 1] = sessionId
+        end
+    end
+end
+
+-- Lazily drop sessions whose refresh token has expired
+local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[4])
+if #expired > 0 then
+    redis.call('HDEL', KEYS[1], unpack(expired))
+    redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[4])
+    unindex(expired)
+end
+
+local count = redis.call('ZCARD', KEYS[2])
+local max = tonumber(ARGV[5])
+local evicted = 0
+
+if count >= max then
+    if ARGV[6] == 'reject-new' then
+        return indexed and -1 or {-1, -1, unpack(removed)}
+    end
+    -- The sessions whose refresh token expires first are the oldest ones
+    local oldest = redis.call('ZRANGE', KEYS[2], 0, count - max)
+    redis.call('HDEL', KEYS[1], unpack(oldest))
+    redis.call('ZREM', KEYS[2], unpack(oldest))
+    unindex(oldest)
+    evicted = #oldest
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])
+
+-- Both keys live as long as the longest session
+local latest = redis.call('ZRANGE', KEYS[2], -1, -1, 'WITHSCORES')[2]
+redis.call('PEXPIREAT', KEYS[1], latest)
+redis.call('PEXPIREAT', KEYS[2], latest)
+
+if indexed then
+    redis.call('ZADD', KEYS[4], ARGV[3], ARGV[1] .. ':' .. ARGV[8])
+    redis.call('ZADD', KEYS[5], latest, ARGV[8])
+
+    -- Other users' expired index entries go a bounded batch at a time, so no call pays for a backlog
+    for i = 4, 5 do
+        local stale = redis.call('ZRANGEBYSCORE', KEYS[i], '-inf', ARGV[4], 'LIMIT', 0, ARGV[9])
+        if #stale > 0 then
+            redis.call('ZREM', KEYS[i], unpack(stale))
+        end
+    end
+end
+
+redis.call('PUBLISH', ARGV[7], cjson.encode(ARGV[8]))
+
+return indexed and evicted or {evicted, tonumber(latest), unpack(removed)}
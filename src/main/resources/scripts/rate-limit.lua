@@ -0,0 +1,33 @@
+-- Generic cell rate algorithm over several limiter keys at once, e.g. the client IP and the
+-- username of a login. The request passes only if every key allows it, and only then are the
+-- keys updated, so a rejected request costs no quota. Time is taken from the Redis server so
+-- the nodes' clocks do not matter.
+-- KEYS[i]:     limiter key, holding its theoretical arrival time (TAT) in epoch ms
+-- ARGV[2i-1]:  emission interval of KEYS[i] in ms (window / limit)
+-- ARGV[2i]:    burst tolerance of KEYS[i] in ms (window - emission interval)
+-- Returns 0 when the request is allowed, otherwise the milliseconds until it would be.
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local tats = {}
+local retryAfter = 0
+for i, key in ipairs(KEYS) do
+    local interval = tonumber(ARGV[2 * i - 1])
+    local tolerance = tonumber(ARGV[2 * i])
+    local tat = math.max(tonumber(redis.call('GET', key) or now), now)
+    local allowAt = tat - tolerance
+    if allowAt > now then
+        retryAfter = math.max(retryAfter, allowAt - now)
+    end
+    tats[i] = tat + interval
+end
+
+if retryAfter > 0 then
+    return retryAfter
+end
+
+-- Each key expires once its TAT has passed, when it would allow a full burst again
+for i, key in ipairs(KEYS) do
+    redis.call('SET', key, tats[i], 'PX', tats[i] - now)
+end
+return 0
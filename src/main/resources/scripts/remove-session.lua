@@ -0,0 +1,35 @@
+-- Removes a single device session of a user.
+-- KEYS[1]: sessions hash
+-- KEYS[2]: session expiry sorted set
+-- KEYS[3]: active session index
+-- KEYS[4]: active user index
+-- ARGV[1]: session id
+-- ARGV[2]: token invalidation channel
+-- ARGV[3]: username, published on the token invalidation channel
+-- Returns 1 when the session existed.
+-- On a cluster the index keys are left out and the script returns
+-- {result, latest session expiry or 0 when the user has no sessions left, removed session ids...}.
+local indexed = #KEYS == 4
+local removed = redis.call('HDEL', KEYS[1], ARGV[1])
+redis.call('ZREM', KEYS[2], ARGV[1])
+
+-- The user's score follows the longest session still left, which may not be the one before
+local latest = redis.call('ZRANGE', KEYS[2], -1, -1, 'WITHSCORES')[2]
+if latest then
+    redis.call('PEXPIREAT', KEYS[1], latest)
+    redis.call('PEXPIREAT', KEYS[2], latest)
+end
+if indexed then
+    redis.call('ZREM', KEYS[3], ARGV[1] .. ':' .. ARGV[3])
+    if latest then
+        redis.call('ZADD', KEYS[4], latest, ARGV[3])
+    else
+        redis.call('ZREM', KEYS[4], ARGV[3])
+    end
+end
+redis.call('PUBLISH', ARGV[2], cjson.encode(ARGV[3]))
+
+if indexed then
+    return removed
+end
+return {removed, latest and tonumber(latest) or 0, ARGV[1]}
@@ -0,0 +1,33 @@
+-- Revokes every token of a user by bumping the user's epoch; tokens stamped with an
+-- older epoch are rejected, so no per-token blacklist entries are written.
+-- KEYS[1]: user epoch key
+-- KEYS[2]: sessions hash
+-- KEYS[3]: session expiry sorted set
+-- KEYS[4]: active session index
+-- KEYS[5]: active user index
+-- ARGV[1]: token invalidation channel
+-- ARGV[2]: username, published on the token invalidation channel
+-- Returns the new epoch.
+-- On a cluster the index keys are left out and the script returns {epoch, 0, removed session ids...}.
+local indexed = #KEYS == 5
+local epoch = redis.call('INCR', KEYS[1])
+
+local sessionIds = redis.call('ZRANGE', KEYS[3], 0, -1)
+if indexed then
+    if #sessionIds > 0 then
+        local members = {}
+        for i, sessionId in ipairs(sessionIds) do
+            members[i] = sessionId .. ':' .. ARGV[2]
+        end
+        redis.call('ZREM', KEYS[4], unpack(members))
+    end
+    redis.call('ZREM', KEYS[5], ARGV[2])
+end
+redis.call('UNLINK', KEYS[2], KEYS[3])
+
+redis.call('PUBLISH', ARGV[1], cjson.encode(ARGV[2]))
+
+if indexed then
+    return epoch
+end
+return {epoch, 0, unpack(sessionIds)}
@@ -0,0 +1,100 @@
+-- Rotates the refresh token of a device session as a compare-and-swap on the session's
+-- current refresh token id. Presenting a refresh token of the session that was already
+-- rotated away means it was replayed, so the whole session is revoked.
+-- KEYS[1]: sessions hash
+-- KEYS[2]: session expiry sorted set
+-- KEYS[3]: user epoch key
+-- KEYS[4]: active session index
+-- KEYS[5]: active user index
+-- ARGV[1]: session id
+-- ARGV[2]: epoch of the presented refresh token
+-- ARGV[3]: id of the presented refresh token
+-- ARGV[4]: id of the presented refresh token, binary encoded
+-- ARGV[5]: new access token id
+-- ARGV[6]: new refresh token id
+-- ARGV[7]: new access and refresh token ids, binary encoded
+-- ARGV[8]: current time, epoch ms
+-- ARGV[9]: current time, binary encoded
+-- ARGV[10]: token invalidation channel
+-- ARGV[11]: username, published on the token invalidation channel
+-- Returns 1 when the token was rotated, 0 when the session or epoch is gone, -1 when reuse revoked the session.
+-- On a cluster the index keys are left out and the script returns
+-- {result, latest session expiry, 0 when the user has no sessions left or -1 when unchanged, removed session ids...}.
+local indexed = #KEYS == 5
+
+local function result(value, latest)
+    if indexed then
+        return value
+    end
+    if latest == nil then
+        return {value, -1}
+    end
+    return {value, latest, ARGV[1]}
+end
+
+local epoch = tonumber(redis.call('GET', KEYS[3]) or '0')
+if epoch ~= tonumber(ARGV[2]) then
+    return result(0)
+end
+
+local record = redis.call('HGET', KEYS[1], ARGV[1])
+if not record then
+    return result(0)
+end
+
+-- Offset just past the id field starting at pos: a tag byte, then nothing (null),
+-- 16 bytes (UUID) or a 2 byte length and UTF-8 bytes
+local function field_end(pos)
+    local tag = string.byte(record, pos)
+    if tag == 0 then
+        return pos + 1
+    elseif tag == 1 then
+        return pos + 17
+    end
+    local high, low = string.byte(record, pos + 1, pos + 2)
+    return pos + 3 + high * 256 + low
+end
+
+local current, rotated
+if string.sub(record, 1, 1) == '{' then
+    -- Legacy JSON record, kept in its own format
+    local session = cjson.decode(record)
+    current = session['refreshTokenId'] == ARGV[3]
+    session['accessTokenId'] = ARGV[5]
+    session['refreshTokenId'] = ARGV[6]
+    session['lastSeenAt'] = tonumber(ARGV[8])
+    rotated = cjson.encode(session)
+else
+    -- version:1 createdAt:8 lastSeenAt:8 refreshExpiresAt:8 accessTokenId refreshTokenId device
+    local refreshStart = field_end(26)
+    local deviceStart = field_end(refreshStart)
+    current = string.sub(record, refreshStart, deviceStart - 1) == ARGV[4]
+    rotated = string.sub(record, 1, 9) .. ARGV[9] .. string.sub(record, 18, 25)
+            .. ARGV[7] .. string.sub(record, deviceStart)
+end
+
+if current then
+    redis.call('HSET', KEYS[1], ARGV[1], rotated)
+    redis.call('PUBLISH', ARGV[10], cjson.encode(ARGV[11]))
+    return result(1)
+end
+
+redis.call('HDEL', KEYS[1], ARGV[1])
+redis.call('ZREM', KEYS[2], ARGV[1])
+-- As in remove-session.lua, the user's score follows the longest session still left
+local latest = redis.call('ZRANGE', KEYS[2], -1, -1, 'WITHSCORES')[2]
+if latest then
+    redis.call('PEXPIREAT', KEYS[1], latest)
+    redis.call('PEXPIREAT', KEYS[2], latest)
+end
+if indexed then
+    redis.call('ZREM', KEYS[4], ARGV[1] .. ':' .. ARGV[11])
+    if latest then
+        redis.call('ZADD', KEYS[5], latest, ARGV[11])
+    else
+        redis.call('ZREM', KEYS[5], ARGV[11])
+    end
+end
+redis.call('PUBLISH', ARGV[10], cjson.encode(ARGV[11]))
+
+return result(-1, latest and tonumber(latest) or 0)
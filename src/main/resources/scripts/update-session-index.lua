@@ -0,0 +1,42 @@
+-- Applies the index changes reported by a session script on a cluster, where the indexes
+-- live in their own slot and cannot be updated by the script itself.
+-- KEYS[1]: active session index (session id:username scored by refresh token expiry)
+-- KEYS[2]: active user index (username scored by the expiry of the user's latest session)
+-- ARGV[1]: username
+-- ARGV[2]: expiry of the user's latest session, 0 when the user has none left, -1 when unchanged
+-- ARGV[3]: current time, epoch ms
+-- ARGV[4]: maximum number of expired index entries to drop
+-- ARGV[5]: added session id, or an empty string
+-- ARGV[6]: refresh token expiry of the added session
+-- ARGV[7..]: removed session ids
+-- Returns 1.
+local members = {}
+for i = 7, #ARGV do
+    members[#members + 1] = ARGV[i] .. ':' .. ARGV[1]
+end
+if #members > 0 then
+    redis.call('ZREM', KEYS[1], unpack(members))
+end
+
+if ARGV[5] ~= '' then
+    redis.call('ZADD', KEYS[1], ARGV[6], ARGV[5] .. ':' .. ARGV[1])
+end
+
+local latest = tonumber(ARGV[2])
+if latest > 0 then
+    redis.call('ZADD', KEYS[2], latest, ARGV[1])
+elseif latest == 0 then
+    redis.call('ZREM', KEYS[2], ARGV[1])
+end
+
+if ARGV[5] ~= '' then
+    -- Same bounded cleanup as create-session.lua
+    for i = 1, 2 do
+        local stale = redis.call('ZRANGEBYSCORE', KEYS[i], '-inf', ARGV[3], 'LIMIT', 0, ARGV[4])
+        if #stale > 0 then
+            redis.call('ZREM', KEYS[i], unpack(stale))
+        end
+    end
+end
+
+return 1
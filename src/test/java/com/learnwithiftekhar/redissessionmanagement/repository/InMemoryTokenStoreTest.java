@@ -0,0 +1,105 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryTokenStoreTest {
+
+    private static SessionRecord session(String accessTokenId, long refreshExpiresAt) {
+        long now = System.currentTimeMillis();
+        return new SessionRecord(accessTokenId, "refresh-" + accessTokenId, "device", now, now, refreshExpiresAt);
+    }
+
+    @Test
+    void evictsTheSessionClosestToExpiryAtTheLimit() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 2, "evict-oldest");
+        long now = System.currentTimeMillis();
+        store.createSession("alice", "s1", session("a1", now + 20_000), 0);
+        store.createSession("alice", "s2", session("a2", now + 10_000), 0);
+
+        assertThat(store.createSession("alice", "s3", session("a3", now + 30_000), 0)).isEqualTo(1);
+        assertThat(store.getSessions("alice").sessions()).containsOnlyKeys("s1", "s3");
+    }
+
+    @Test
+    void rejectsNewSessionsAtTheLimit() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 1, "reject-new");
+        long expiresAt = System.currentTimeMillis() + 10_000;
+        store.createSession("alice", "s1", session("a1", expiresAt), 0);
+
+        assertThatThrownBy(() -> store.createSession("alice", "s2", session("a2", expiresAt), 0))
+                .isInstanceOf(SessionLimitExceededException.class);
+        assertThat(store.getSessions("alice").sessions()).containsOnlyKeys("s1");
+    }
+
+    @Test
+    void revokingAllTokensBumpsTheEpoch() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 5, "evict-oldest");
+        store.createSession("alice", "s1", session("a1", System.currentTimeMillis() + 10_000), 0);
+
+        store.removeAllTokens("alice");
+
+        UserSessions sessions = store.getSessions("alice");
+        assertThat(sessions.epoch()).isEqualTo(1);
+        assertThat(sessions.sessions()).isEmpty();
+        assertThat(sessions.isCurrentAccessToken("s1", "a1", 0)).isFalse();
+    }
+
+    @Test
+    void rejectsSessionsOfAnEpochRevokedSinceSignIn() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 5, "evict-oldest");
+        long epoch = store.getEpoch("alice");
+        store.removeAllTokens("alice");
+
+        assertThatThrownBy(() -> store.createSession("alice", "s1", session("a1", System.currentTimeMillis() + 10_000), epoch))
+                .isInstanceOf(StaleEpochException.class);
+        assertThat(store.getSessions("alice").sessions()).isEmpty();
+    }
+
+    @Test
+    void rotatesRefreshTokensAndRevokesTheSessionOnReuse() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 5, "evict-oldest");
+        store.createSession("alice", "s1", session("a1", System.currentTimeMillis() + 10_000), 0);
+
+        assertThat(store.rotateRefreshToken("alice", "s1", 0, "refresh-a1", "a2", "r2")).isEqualTo(RefreshRotation.ROTATED);
+        assertThat(store.getSessions("alice").isCurrentRefreshToken("s1", "r2", 0)).isTrue();
+        assertThat(store.rotateRefreshToken("alice", "s1", 1, "r2", "a3", "r3")).isEqualTo(RefreshRotation.INVALID);
+
+        assertThat(store.rotateRefreshToken("alice", "s1", 0, "refresh-a1", "a3", "r3")).isEqualTo(RefreshRotation.REUSED);
+        assertThat(store.getSessions("alice").sessions()).isEmpty();
+    }
+
+    @Test
+    void countsAndPagesThroughLiveSessions() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 5, "evict-oldest");
+        long now = System.currentTimeMillis();
+        store.createSession("alice", "s1", session("a1", now + 30_000), 0);
+        store.createSession("alice", "s2", session("a2", now + 10_000), 0);
+        store.createSession("bob", "s3", session("a3", now + 20_000), 0);
+        store.createSession("carol", "s4", session("a4", now - 1), 0);
+
+        assertThat(store.countActiveSessions()).isEqualTo(new SessionCounts(2, 3));
+        assertThat(store.countSessions("alice")).isEqualTo(2);
+
+        ActiveSessionPage first = store.listActiveSessions(null, 2);
+        assertThat(first.sessions()).extracting(ActiveSession::sessionId).containsExactly("s2", "s3");
+        ActiveSessionPage second = store.listActiveSessions(ActiveSession.fromCursor(first.nextCursor()), 2);
+        assertThat(second.sessions()).extracting(ActiveSession::sessionId).containsExactly("s1");
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void blacklistsTokensUntilTheyExpire() {
+        InMemoryTokenStore store = new InMemoryTokenStore(100, 5, "evict-oldest");
+        store.blacklistAccessToken("live", Instant.now().plusSeconds(60));
+        store.blacklistAccessToken("expired", Instant.now().minusSeconds(1));
+
+        assertThat(store.isAccessTokenBlacklisted("live")).isTrue();
+        assertThat(store.isRefreshTokenBlacklisted("live")).isFalse();
+        assertThat(store.isAccessTokenBlacklisted("expired")).isFalse();
+    }
+}
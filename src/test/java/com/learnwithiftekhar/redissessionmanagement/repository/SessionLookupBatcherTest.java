@@ -0,0 +1,121 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class SessionLookupBatcherTest {
+
+    private static final int LOOKUPS = 32;
+
+    private final AtomicInteger batchReads = new AtomicInteger();
+    private final AtomicInteger usersRead = new AtomicInteger();
+
+    // An in-memory store posing as a remote one, counting the batched reads
+    private final InMemoryTokenStore tokenStore = new InMemoryTokenStore(100, 5, "evict-oldest") {
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+
+        @Override
+        public Map<String, UserSessions> getSessionsFromReplica(Collection<String> usernames) {
+            batchReads.incrementAndGet();
+            usersRead.addAndGet(usernames.size());
+            return super.getSessionsFromReplica(usernames);
+        }
+    };
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(LOOKUPS);
+    private SessionLookupBatcher lookupBatcher;
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        if (lookupBatcher != null) {
+            lookupBatcher.shutdown();
+        }
+    }
+
+    @Test
+    void coalescesConcurrentLookups() throws Exception {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            tokenStore.createSession("user-" + i, "session-" + i,
+                    new SessionRecord("access-" + i, "refresh-" + i, "test", now, now, now + 60_000), 0);
+        }
+        // A window long enough for every lookup to join, closed early by the batch size
+        lookupBatcher = new SessionLookupBatcher(tokenStore, new SimpleMeterRegistry(), true, LOOKUPS, 5_000_000, 1_000);
+
+        List<Future<UserSessions>> results = new ArrayList<>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            String username = "user-" + i % 4;
+            results.add(callers.submit(() -> lookupBatcher.getSessions(username)));
+        }
+
+        for (int i = 0; i < LOOKUPS; i++) {
+            UserSessions sessions = results.get(i).get(5, TimeUnit.SECONDS);
+            assertThat(sessions.get("session-" + i % 4).accessTokenId()).isEqualTo("access-" + i % 4);
+        }
+        assertThat(batchReads).hasValue(1);
+        assertThat(usersRead).hasValue(4);
+    }
+
+    @Test
+    void readsDirectlyWhenDisabled() {
+        lookupBatcher = new SessionLookupBatcher(tokenStore, new SimpleMeterRegistry(), false, LOOKUPS, 200, 250);
+
+        assertThat(lookupBatcher.getSessions("nobody").sessions()).isEmpty();
+        assertThat(batchReads).hasValue(0);
+    }
+
+    @Test
+    void readsAloneOnceStopped() throws Exception {
+        lookupBatcher = new SessionLookupBatcher(tokenStore, new SimpleMeterRegistry(), true, LOOKUPS, 200, 250);
+        lookupBatcher.shutdown();
+
+        Future<UserSessions> result = callers.submit(() -> lookupBatcher.getSessions("nobody"));
+
+        assertThat(result.get(5, TimeUnit.SECONDS).sessions()).isEmpty();
+        assertThat(batchReads).hasValue(0);
+    }
+
+    @Test
+    void readsAloneWhenTheFlusherDies() throws Exception {
+        InMemoryTokenStore failingStore = new InMemoryTokenStore(100, 5, "evict-oldest") {
+            @Override
+            public boolean isRemote() {
+                return true;
+            }
+
+            @Override
+            public Map<String, UserSessions> getSessionsFromReplica(Collection<String> usernames) {
+                throw new AssertionError("batched read failed");
+            }
+        };
+        lookupBatcher = new SessionLookupBatcher(failingStore, new SimpleMeterRegistry(), true, LOOKUPS, 200, 250);
+
+        // The first lookup fails with its batch, or reads alone if the flusher has already stopped
+        Future<UserSessions> first = callers.submit(() -> lookupBatcher.getSessions("nobody"));
+        Throwable thrown = catchThrowable(() -> first.get(5, TimeUnit.SECONDS));
+        assertThat(thrown).satisfiesAnyOf(
+                failure -> assertThat(failure).isNull(),
+                failure -> assertThat(failure).isInstanceOf(ExecutionException.class));
+        Future<UserSessions> next = callers.submit(() -> lookupBatcher.getSessions("nobody"));
+        assertThat(next.get(5, TimeUnit.SECONDS).sessions()).isEmpty();
+    }
+}
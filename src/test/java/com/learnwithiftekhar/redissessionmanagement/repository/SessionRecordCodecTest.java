@@ -0,0 +1,61 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionRecordCodecTest {
+
+    private final SessionRecord session = new SessionRecord(
+            UUID.randomUUID().toString(),
+            UUID.randomUUID().toString(),
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_0 like Mac OS X)",
+            1_700_000_000_000L,
+            1_700_000_100_000L,
+            1_700_604_800_000L
+    );
+
+    @Test
+    void roundTripsBinaryRecords() {
+        SessionRecordCodec codec = new SessionRecordCodec(false, false);
+
+        byte[] encoded = codec.encode(session);
+
+        assertThat(codec.decode(encoded)).isEqualTo(session);
+        assertThat(encoded.length).isLessThan(new GenericJackson2JsonRedisSerializer().serialize(session).length / 2);
+    }
+
+    @Test
+    void roundTripsNullAndNonUuidFields() {
+        SessionRecordCodec codec = new SessionRecordCodec(false, false);
+        SessionRecord legacyIds = new SessionRecord("not-a-uuid", "ABCDEF00-0000-0000-0000-000000000000", null, 1, 2, 3);
+
+        assertThat(codec.decode(codec.encode(legacyIds))).isEqualTo(legacyIds);
+    }
+
+    @Test
+    void readsLegacyJsonRecordsOnlyWhenEnabled() {
+        byte[] json = new SessionRecordCodec(true, true).encode(session);
+
+        assertThat(new SessionRecordCodec(false, true).decode(json)).isEqualTo(session);
+        assertThatThrownBy(() -> new SessionRecordCodec(false, false).decode(json))
+                .isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void encodesFieldsAsTheyAppearInBinaryRecords() {
+        SessionRecordCodec codec = new SessionRecordCodec(false, false);
+        byte[] encoded = codec.encode(session);
+
+        // The refresh token script splices these into stored records
+        byte[] ids = codec.encodeIds(session.accessTokenId(), session.refreshTokenId());
+        assertThat(Arrays.copyOfRange(encoded, 25, 25 + ids.length)).isEqualTo(ids);
+        assertThat(Arrays.copyOfRange(encoded, 9, 17)).isEqualTo(SessionRecordCodec.encodeTime(session.lastSeenAt()));
+    }
+}
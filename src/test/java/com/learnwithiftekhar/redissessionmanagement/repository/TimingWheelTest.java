@@ -0,0 +1,60 @@
+package com.learnwithiftekhar.redissessionmanagement.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void runsTasksOnceTheirDeadlinePasses() {
+        TimingWheel wheel = new TimingWheel(100, 0);
+        List<String> run = new ArrayList<>();
+        wheel.schedule(250, () -> run.add("short"));
+        wheel.schedule(100_000, () -> run.add("long"));
+
+        wheel.advance(200);
+        assertThat(run).isEmpty();
+
+        wheel.advance(300);
+        assertThat(run).containsExactly("short");
+
+        wheel.advance(99_900);
+        assertThat(run).containsExactly("short");
+
+        wheel.advance(100_000);
+        assertThat(run).containsExactly("short", "long");
+    }
+
+    @Test
+    void cascadesDeadlinesBeyondTheLastLevel() {
+        TimingWheel wheel = new TimingWheel(1, 0);
+        List<Long> run = new ArrayList<>();
+        // Deadlines on every level, on level boundaries and past the span of the wheel
+        long[] deadlines = {1, 63, 64, 65, 4_095, 4_096, 4_097, 262_144, 16_777_215, 16_777_216, 40_000_000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, () -> run.add(deadline));
+        }
+
+        for (long deadline : deadlines) {
+            wheel.advance(deadline - 1);
+            assertThat(run).doesNotContain(deadline);
+            wheel.advance(deadline);
+            assertThat(run).contains(deadline);
+        }
+        assertThat(run).containsExactly(1L, 63L, 64L, 65L, 4_095L, 4_096L, 4_097L, 262_144L, 16_777_215L, 16_777_216L, 40_000_000L);
+    }
+
+    @Test
+    void runsOverdueTasksOnTheNextTick() {
+        TimingWheel wheel = new TimingWheel(100, 1_000);
+        List<String> run = new ArrayList<>();
+        wheel.schedule(500, () -> run.add("overdue"));
+
+        wheel.advance(1_100);
+        assertThat(run).containsExactly("overdue");
+    }
+}
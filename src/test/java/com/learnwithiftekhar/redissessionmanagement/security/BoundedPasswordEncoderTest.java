@@ -0,0 +1,71 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedPasswordEncoderTest {
+
+    @Test
+    void delegatesHashing() {
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(
+                NoOpPasswordEncoder.getInstance(), 1, 1, Duration.ofSeconds(1), new SimpleMeterRegistry())) {
+            assertThat(encoder.encode("secret")).isEqualTo("secret");
+            assertThat(encoder.matches("secret", "secret")).isTrue();
+        }
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return true;
+            }
+        };
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(
+                blocking, 1, 1, Duration.ofSeconds(2), meterRegistry)) {
+            // One hash running and one queued fill the encoder
+            callers.submit(() -> encoder.encode("running"));
+            started.await();
+            callers.submit(() -> encoder.encode("queued"));
+            while (meterRegistry.get("password.hashing.queue.depth").gauge().value() < 1) {
+                Thread.onSpinWait();
+            }
+
+            assertThatThrownBy(() -> encoder.encode("rejected"))
+                    .isInstanceOf(PasswordHashingRejectedException.class)
+                    .extracting("retryAfter")
+                    .isEqualTo(Duration.ofSeconds(2));
+            assertThat(meterRegistry.get("password.hashing.rejected").counter().count()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HmacJwtCodecTest {
+
+    private static final SecretKey KEY = Keys.hmacShaKeyFor(
+            "a-test-secret-that-is-long-enough-for-hmac-sha-512-signatures-0123456789".getBytes(StandardCharsets.UTF_8));
+    private static final String ISSUER = "learnwithiftekhar.com";
+
+    private final HmacJwtCodec codec = HmacJwtCodec.forKey(KEY, ISSUER);
+    private final long now = System.currentTimeMillis() / 1000;
+
+    @Test
+    void encodesTokensJjwtAccepts() {
+        String token = codec.encode("jti-1", "alice", now, now + 3600, "sid-1", "access", 7, List.of("USER", "ADMIN"));
+
+        Claims claims = Jwts.parser().verifyWith(KEY).build().parseSignedClaims(token).getPayload();
+        assertThat(claims.getId()).isEqualTo("jti-1");
+        assertThat(claims.getIssuer()).isEqualTo(ISSUER);
+        assertThat(claims.getSubject()).isEqualTo("alice");
+        assertThat(claims.getIssuedAt().toInstant()).isEqualTo(Instant.ofEpochSecond(now));
+        assertThat(claims.getExpiration().toInstant()).isEqualTo(Instant.ofEpochSecond(now + 3600));
+        assertThat(claims.get("sid", String.class)).isEqualTo("sid-1");
+        assertThat(claims.get("type", String.class)).isEqualTo("access");
+        assertThat(claims.get("epoch", Number.class).longValue()).isEqualTo(7);
+        assertThat(claims.get("authorities", List.class)).containsExactly("USER", "ADMIN");
+    }
+
+    @Test
+    void decodesTokensIssuedByJjwt() {
+        String token = Jwts.builder()
+                .id("jti-2")
+                .issuer(ISSUER)
+                .subject("bob")
+                .issuedAt(new Date(now * 1000))
+                .expiration(new Date((now + 60) * 1000))
+                .claims(Map.of("type", "refresh", "epoch", 3L, "sid", "sid-2"))
+                .signWith(KEY)
+                .compact();
+
+        TokenClaims claims = codec.decode(token, true);
+
+        assertThat(claims).isEqualTo(new TokenClaims("bob", "refresh", Instant.ofEpochSecond(now + 60),
+                Instant.ofEpochSecond(now), "jti-2", "sid-2", 3, null));
+    }
+
+    @Test
+    void roundTripsAndHonoursAuthoritiesSetting() {
+        String token = codec.encode("jti-3", "carol", now, now + 60, "sid-3", "access", 0, List.of("USER"));
+
+        assertThat(codec.decode(token, true).authorities()).containsExactly("USER");
+        assertThat(codec.decode(token, false).authorities()).isNull();
+    }
+
+    @Test
+    void rejectsTamperedSignature() {
+        String token = codec.encode("jti-4", "dave", now, now + 60, "sid-4", "access", 0, null);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BA" : "AA");
+
+        assertThatThrownBy(() -> codec.decode(tampered, false)).isInstanceOf(SignatureException.class);
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = codec.encode("jti-5", "erin", now - 120, now - 60, "sid-5", "access", 0, null);
+
+        assertThatThrownBy(() -> codec.decode(token, false)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void leavesOtherShapesToJjwt() {
+        // Values that need escaping are not written
+        assertThat(codec.encode("jti-6", "quote\"user", now, now + 60, "sid-6", "access", 0, null)).isNull();
+
+        // Unknown claims and other headers are not read
+        String extraClaim = Jwts.builder().subject("frank").issuedAt(new Date(now * 1000))
+                .expiration(new Date((now + 60) * 1000)).claim("scope", "all").signWith(KEY).compact();
+        String withKid = Jwts.builder().header().keyId("k1").and().subject("frank").issuedAt(new Date(now * 1000))
+                .expiration(new Date((now + 60) * 1000)).signWith(KEY).compact();
+        assertThat(codec.decode(extraClaim, false)).isNull();
+        assertThat(codec.decode(withKid, false)).isNull();
+        assertThat(codec.decode("not-a-token", false)).isNull();
+    }
+}
@@ -0,0 +1,132 @@
+package com.learnwithiftekhar.redissessionmanagement.security;
+
+import com.learnwithiftekhar.redissessionmanagement.repository.InMemoryTokenStore;
+import com.learnwithiftekhar.redissessionmanagement.repository.RedisKeyLayout;
+import com.learnwithiftekhar.redissessionmanagement.repository.TokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // A local token store means a single node, so decisions never reach Redis
+    private final RateLimiter rateLimiter = new RateLimiter(null, new InMemoryTokenStore(100, 5, "evict-oldest"),
+            new RedisKeyLayout(false), meterRegistry, true, 4, 2, 60_000, 0, 60_000, 1_000);
+
+    @Test
+    void rejectsUsernameOverQuota() {
+        rateLimiter.checkLogin("10.0.0.1", "alice");
+        rateLimiter.checkLogin("10.0.0.2", "alice");
+
+        // Two per minute: the next attempt is allowed 30 seconds after the first
+        assertThatThrownBy(() -> rateLimiter.checkLogin("10.0.0.3", "alice"))
+                .isInstanceOf(RateLimitExceededException.class)
+                .satisfies(e -> assertThat(((RateLimitExceededException) e).getRetryAfter())
+                        .isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30)));
+        assertThat(loginDecisions("rejected_local")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedAttemptsDoNotUseOtherQuotas() {
+        rateLimiter.checkLogin("10.0.0.1", "alice");
+        rateLimiter.checkLogin("10.0.0.1", "alice");
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> rateLimiter.checkLogin("10.0.0.1", "alice"))
+                    .isInstanceOf(RateLimitExceededException.class);
+        }
+
+        // The IP has used two of its four attempts, whatever alice's quota rejected
+        rateLimiter.checkLogin("10.0.0.1", "bob");
+        rateLimiter.checkLogin("10.0.0.1", "carol");
+        assertThatThrownBy(() -> rateLimiter.checkLogin("10.0.0.1", "dave"))
+                .isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void zeroLimitDisablesQuota() {
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.checkRefresh("10.0.0.1");
+        }
+        assertThat(meterRegistry.find("rate.limit.decisions").tag("endpoint", "refresh").counters())
+                .allSatisfy(counter -> assertThat(counter.count()).isZero());
+    }
+
+    @Test
+    void concurrentAttemptsCannotExceedLocalQuota() throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> attempts = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                attempts.add(executor.submit(() -> {
+                    try {
+                        rateLimiter.checkLogin("10.0.0.1", "user-" + Thread.currentThread().getId());
+                        allowed.incrementAndGet();
+                    } catch (RateLimitExceededException e) {
+                        // expected once the IP's four attempts are used
+                    }
+                }));
+            }
+            for (Future<?> attempt : attempts) {
+                attempt.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(allowed.get()).isEqualTo(4);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sharedRejectionGivesLocalQuotaBack() {
+        RedisTemplate<String, byte[]> redisTemplate = mock(RedisTemplate.class);
+        TokenStore tokenStore = mock(TokenStore.class);
+        when(tokenStore.isRemote()).thenReturn(true);
+        RateLimiter distributed = new RateLimiter(redisTemplate, tokenStore, new RedisKeyLayout(true),
+                meterRegistry, true, 4, 2, 60_000, 0, 60_000, 1_000);
+
+        // Other nodes have used alice's quota
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(20_000L);
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> distributed.checkLogin("10.0.0.1", "alice"))
+                    .isInstanceOf(RateLimitExceededException.class);
+        }
+
+        // Once it recovers, this node has not counted the rejected attempts against it
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(0L);
+        distributed.checkLogin("10.0.0.1", "alice");
+        distributed.checkLogin("10.0.0.1", "alice");
+
+        assertThat(loginDecisions("rejected")).isEqualTo(3);
+        assertThat(loginDecisions("rejected_local")).isZero();
+        // Both limiter keys of a login share the {login} slot, so a cluster decides them in one call
+        verify(redisTemplate, times(5)).execute(any(RedisScript.class),
+                eq(List.of("rate-limit:{login}:ip:10.0.0.1", "rate-limit:{login}:user:alice")), any(Object[].class));
+    }
+
+    private double loginDecisions(String outcome) {
+        return meterRegistry.get("rate.limit.decisions").tag("endpoint", "login").tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,89 @@
+package com.learnwithiftekhar.redissessionmanagement.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Counter executed = meterRegistry.counter("executed");
+    private final Counter collapsed = meterRegistry.counter("collapsed");
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(executed, collapsed);
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> singleFlight.load("alice", key -> {
+                loads.incrementAndGet();
+                await(release);
+                return key.toUpperCase();
+            })));
+        }
+        // Every caller but the one running the load is waiting on it
+        while (collapsed.count() < 7) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("ALICE");
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(executed.count()).isEqualTo(1);
+
+        // Nothing is kept after the call, so the next one loads again
+        assertThat(singleFlight.load("alice", key -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    void waitersSeeTheLoaderException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = callers.submit(() -> singleFlight.load("bob", key -> {
+            await(release);
+            throw new IllegalStateException("database down");
+        }));
+        while (executed.count() < 1) {
+            Thread.onSpinWait();
+        }
+        Future<String> waiter = callers.submit(() -> singleFlight.load("bob", key -> "unused"));
+        while (collapsed.count() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertThatThrownBy(waiter::get).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(leader::get).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}